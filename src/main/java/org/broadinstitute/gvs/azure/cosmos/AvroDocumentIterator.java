@@ -0,0 +1,227 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Groups a stream of Avro records, which must be ordered by `sample_id` and `location`, into Cosmos documents. Documents
+ * are built lazily so only the document under construction is held in memory.
+ */
+class AvroDocumentIterator implements Iterator<ObjectNode> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvroDocumentIterator.class);
+
+    // Non-cryptographic and fast; this only needs to catch lost or mangled documents, not tampering.
+    private static final HashFunction CHECKSUM_FUNCTION = Hashing.farmHashFingerprint64();
+
+    private static final String DOCUMENT_JSON_TEMPLATE = """
+            {
+                 "id": "%s",
+                 "sample_id" : %d,
+                 "chromosome": %d,
+                 "location" : {
+                     "start" : %d
+                 },
+                 "schema": [],
+                 "entries" : []
+            }
+            """;
+
+    private final ObjectMapper objectMapper;
+    private final Iterator<? extends GenericRecord> records;
+    private final Schema schema;
+    private final IngestArguments ingestArguments;
+    private final SampleFilter sampleFilter;
+    private final SampleSummaryAccumulator summaryAccumulator;
+    private final AtomicLong recordCounter;
+    private final AtomicLong documentCounter;
+    private final String dropState;
+
+    private ArrayNode avroSchema = null;
+    // The filter decision for the most recent sample, records for a sample arrive together.
+    private Long filteredSampleId = null;
+    private boolean filteredSampleIncluded = false;
+    private SampleSummaryAccumulator.SampleSummary filteredSampleSummary = null;
+
+    private ObjectNode currentDocument = null;
+    private ArrayNode currentRecordArray = null;
+    private Hasher currentHasher = null;
+    private Long currentSampleId = null;
+    private long currentStartLocation = -1L;
+    // Earlier documents of the current sample starting at `currentStartLocation`.
+    private int currentStartRepeats = 0;
+    private long currentMaxLocation = -1L;
+    private short currentChromosome = -1;
+
+    // A finished document waiting to be returned from `next`.
+    private ObjectNode finishedDocument = null;
+
+    AvroDocumentIterator(ObjectMapper objectMapper, Iterator<? extends GenericRecord> records, Schema schema,
+                         IngestArguments ingestArguments, SampleFilter sampleFilter,
+                         SampleSummaryAccumulator summaryAccumulator,
+                         AtomicLong recordCounter, AtomicLong documentCounter) {
+        this.objectMapper = objectMapper;
+        this.records = records;
+        this.schema = schema;
+        this.ingestArguments = ingestArguments;
+        this.sampleFilter = sampleFilter;
+        this.summaryAccumulator = summaryAccumulator;
+        this.recordCounter = recordCounter;
+        this.documentCounter = documentCounter;
+        this.dropState = ingestArguments.getDropState();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finishedDocument == null) {
+            advance();
+        }
+        return finishedDocument != null;
+    }
+
+    @Override
+    public ObjectNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ObjectNode document = finishedDocument;
+        finishedDocument = null;
+        return document;
+    }
+
+    private void advance() {
+        try {
+            while (finishedDocument == null && records.hasNext()) {
+                addRecord(records.next());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (finishedDocument == null && currentDocument != null) {
+            // Out of records, finish off the last document.
+            finishCurrentDocument();
+        }
+    }
+
+    private void addRecord(GenericRecord avroRecord) throws IOException {
+        // Where the Cosmos JSON serialization magic happens:
+        // https://github.com/Azure/azure-sdk-for-java/blob/80b12e48aeb6ad2f49e86643dfd7223bde7a9a0c/sdk/cosmos/azure-cosmos/src/main/java/com/azure/cosmos/implementation/JsonSerializable.java#L255
+        long longRecordCounter = recordCounter.incrementAndGet();
+
+        // Check the sample straight off the decoded Avro record, before paying for JSON conversion.
+        long avroSampleId = ((Number) avroRecord.get("sample_id")).longValue();
+        if (filteredSampleId == null || filteredSampleId != avroSampleId) {
+            filteredSampleId = avroSampleId;
+            filteredSampleIncluded = sampleFilter.includes(avroSampleId);
+            filteredSampleSummary = filteredSampleIncluded && summaryAccumulator != null ?
+                    summaryAccumulator.forSample(avroSampleId) : null;
+        }
+        if (!filteredSampleIncluded) {
+            if (longRecordCounter % ingestArguments.getNumProgress() == 0L) logger.info(longRecordCounter + "...");
+            return;
+        }
+        if (filteredSampleSummary != null) {
+            // Before any drop state filtering, summaries count every record.
+            filteredSampleSummary.accept(avroRecord);
+        }
+
+        String recordText = avroRecord.toString();
+        ObjectNode record = (ObjectNode) objectMapper.readTree(recordText);
+
+        if (dropState != null) {
+            String state = record.get("state").asText();
+            // Drop this record if its state matches the drop state.
+            if (state.equals(dropState)) {
+                if (longRecordCounter % ingestArguments.getNumProgress() == 0L) logger.info(longRecordCounter + "...");
+                return;
+            }
+        }
+        Long sampleId = record.get("sample_id").asLong();
+        Short chromosome = (short) (record.get("location").asLong() / AvroReader.CHROMOSOME_MULTIPLIER);
+        AvroReader.formatAvroRecordForCosmos(record);
+
+        if (sampleId.equals(currentSampleId) && chromosome.equals(currentChromosome) &&
+                currentRecordArray.size() < ingestArguments.getMaxRecordsPerDocument()) {
+            // Add to current document
+            currentRecordArray.add(record);
+            currentHasher.putString(recordText, StandardCharsets.UTF_8);
+            currentMaxLocation = Math.max(currentMaxLocation, AvroReader.calculateEndLocation(record));
+        } else {
+            // Make a new document.
+            if (currentDocument != null) {
+                // Finish off the current document if there is one.
+                finishCurrentDocument();
+            }
+            if (avroSchema == null) {
+                avroSchema = (ArrayNode) objectMapper.readTree(schema.toString()).get("fields");
+            }
+
+            // On to the next document.
+            long startLocation = record.get("location").asLong();
+            if (sampleId.equals(currentSampleId) && startLocation == currentStartLocation) {
+                // Only possible if a full document's worth of records share one location.
+                currentStartRepeats++;
+            } else {
+                currentStartRepeats = 0;
+            }
+            documentCounter.incrementAndGet();
+            String currentDocumentText = String.format(
+                    DOCUMENT_JSON_TEMPLATE, documentId(sampleId, startLocation, currentStartRepeats),
+                    sampleId, chromosome, startLocation);
+
+            currentDocument = (ObjectNode) objectMapper.readTree(currentDocumentText);
+
+            ArrayNode schemaArray = (ArrayNode) currentDocument.get("schema");
+            schemaArray.addAll(avroSchema);
+
+            currentRecordArray = (ArrayNode) currentDocument.get("entries");
+            currentRecordArray.add(record);
+            currentHasher = CHECKSUM_FUNCTION.newHasher();
+            currentHasher.putString(recordText, StandardCharsets.UTF_8);
+            currentSampleId = sampleId;
+            currentStartLocation = startLocation;
+            currentChromosome = chromosome;
+            currentMaxLocation = AvroReader.calculateEndLocation(record);
+        }
+        if (longRecordCounter % ingestArguments.getNumProgress() == 0L) logger.info(longRecordCounter + "...");
+    }
+
+    /**
+     * Document ids depend only on the sample's records, not on what else a load includes, so reloading a sample with
+     * the same arguments upserts over any of its documents already written rather than duplicating them.
+     */
+    static String documentId(long sampleId, long startLocation, int startRepeats) {
+        return startRepeats == 0 ? String.format("%d-%d", sampleId, startLocation) :
+                String.format("%d-%d-%d", sampleId, startLocation, startRepeats);
+    }
+
+    private void finishCurrentDocument() {
+        ObjectNode location = (ObjectNode) currentDocument.get("location");
+        location.set("end", new LongNode(currentMaxLocation));
+        if (dropState != null) {
+            currentDocument.put("dropState", dropState);
+        }
+        // Small top-level properties that allow a load to be verified with a projection-only query that never reads
+        // the `entries` payloads.
+        currentDocument.put("record_count", currentRecordArray.size());
+        currentDocument.put("checksum", AvroReader.formatChecksum(currentHasher.hash().asLong()));
+
+        finishedDocument = currentDocument;
+        currentDocument = null;
+    }
+}
@@ -0,0 +1,229 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Bounded-memory external sort of Avro records by `sample_id` and `location`, so that exports do not need an
+ * `ORDER BY` in BigQuery. Records are read into memory `maxRecordsPerRun` at a time, sorted, and spilled to local disk
+ * as Snappy-compressed Avro runs which are then k-way merged into a single sorted stream, in several passes if there are
+ * more runs than the merge fan-in.
+ */
+public class AvroExternalSorter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvroExternalSorter.class);
+
+    @VisibleForTesting
+    static final Comparator<GenericRecord> SAMPLE_LOCATION_ORDER =
+            Comparator.comparingLong((GenericRecord record) -> ((Number) record.get("sample_id")).longValue())
+                    .thenComparingLong(record -> ((Number) record.get("location")).longValue());
+
+    /**
+     * k-way merge of sorted runs. Closing closes and deletes the runs.
+     */
+    private static class RunMerge implements Iterator<GenericRecord>, Closeable {
+
+        private record RunHead(GenericRecord record, int runIndex) {
+        }
+
+        private final List<Path> runPaths;
+        private final List<DataFileReader<GenericRecord>> runReaders = new ArrayList<>();
+        private final PriorityQueue<RunHead> runHeads = new PriorityQueue<>(
+                Comparator.comparing(RunHead::record, SAMPLE_LOCATION_ORDER).thenComparingInt(RunHead::runIndex));
+
+        private RunMerge(List<Path> runPaths) throws IOException {
+            this.runPaths = runPaths;
+            try {
+                for (Path runPath : runPaths) {
+                    DataFileReader<GenericRecord> runReader = new DataFileReader<>(new File(runPath.toString()), new GenericDatumReader<>());
+                    runReaders.add(runReader);
+                    if (runReader.hasNext()) {
+                        runHeads.add(new RunHead(runReader.next(), runReaders.size() - 1));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (DataFileReader<GenericRecord> runReader : runReaders) {
+                    try {
+                        runReader.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !runHeads.isEmpty();
+        }
+
+        @Override
+        public GenericRecord next() {
+            RunHead head = runHeads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            DataFileReader<GenericRecord> runReader = runReaders.get(head.runIndex());
+            if (runReader.hasNext()) {
+                runHeads.add(new RunHead(runReader.next(), head.runIndex()));
+            }
+            return head.record();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataFileReader<GenericRecord> runReader : runReaders) {
+                runReader.close();
+            }
+            for (Path runPath : runPaths) {
+                Files.delete(runPath);
+            }
+        }
+    }
+
+    /**
+     * A sorted stream of records merged from sorted runs on disk. Closing deletes the runs.
+     */
+    public static class SortedRecords implements Iterator<GenericRecord>, Closeable {
+
+        private final Schema schema;
+        private final Path runDir;
+        private final RunMerge runMerge;
+
+        private SortedRecords(Schema schema, Path runDir, List<Path> runPaths) throws IOException {
+            this.schema = schema;
+            this.runDir = runDir;
+            this.runMerge = new RunMerge(runPaths);
+        }
+
+        public Schema getSchema() {
+            return schema;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return runMerge.hasNext();
+        }
+
+        @Override
+        public GenericRecord next() {
+            return runMerge.next();
+        }
+
+        @Override
+        public void close() {
+            try {
+                runMerge.close();
+                deleteRunDir(runDir);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @param maxMergeFanIn the most runs open at once; with more runs than this, groups of runs are merged into longer
+     *                      runs until few enough remain, so open files and read buffers stay bounded
+     */
+    public static SortedRecords sort(Iterable<Path> avroPaths, Path spillDir, int maxRecordsPerRun, int maxMergeFanIn) throws IOException {
+        if (maxMergeFanIn < 2) {
+            throw new IllegalArgumentException("Merge fan-in must be at least 2, not " + maxMergeFanIn);
+        }
+        Files.createDirectories(spillDir);
+        Path runDir = Files.createTempDirectory(spillDir, "avro-sort-");
+
+        try {
+            Schema schema = null;
+            List<Path> runPaths = new ArrayList<>();
+            List<GenericRecord> buffer = new ArrayList<>();
+            int runIndex = 0;
+
+            for (Path avroPath : avroPaths) {
+                logger.info(String.format("Sorting Avro file '%s'...", avroPath));
+                try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(avroPath.toString()), new GenericDatumReader<>())) {
+                    if (schema == null) {
+                        schema = reader.getSchema();
+                    } else if (!schema.equals(reader.getSchema())) {
+                        throw new IllegalArgumentException(String.format(
+                                "Avro file '%s' has schema %s which differs from %s", avroPath, reader.getSchema(), schema));
+                    }
+                    for (GenericRecord record : reader) {
+                        buffer.add(record);
+                        if (buffer.size() >= maxRecordsPerRun) {
+                            buffer.sort(SAMPLE_LOCATION_ORDER);
+                            runPaths.add(writeRun(buffer.iterator(), schema, runDir, runIndex++));
+                            buffer.clear();
+                        }
+                    }
+                }
+            }
+            if (!buffer.isEmpty()) {
+                buffer.sort(SAMPLE_LOCATION_ORDER);
+                runPaths.add(writeRun(buffer.iterator(), schema, runDir, runIndex++));
+                buffer.clear();
+            }
+
+            while (runPaths.size() > maxMergeFanIn) {
+                logger.info(String.format("Merging %d sorted runs in groups of %d.", runPaths.size(), maxMergeFanIn));
+                List<Path> mergedRunPaths = new ArrayList<>();
+                for (List<Path> group : Lists.partition(runPaths, maxMergeFanIn)) {
+                    try (RunMerge runMerge = new RunMerge(group)) {
+                        mergedRunPaths.add(writeRun(runMerge, schema, runDir, runIndex++));
+                    }
+                }
+                runPaths = mergedRunPaths;
+            }
+
+            logger.info(String.format("Merging %d sorted runs.", runPaths.size()));
+            return new SortedRecords(schema, runDir, runPaths);
+        } catch (IOException | RuntimeException e) {
+            try {
+                deleteRunDir(runDir);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static Path writeRun(Iterator<GenericRecord> sortedRecords, Schema schema, Path runDir, int runIndex) throws IOException {
+        Path runPath = runDir.resolve(String.format("run_%05d.avro", runIndex));
+        long records = 0;
+        try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.setCodec(CodecFactory.snappyCodec());
+            writer.create(schema, runPath.toFile());
+            while (sortedRecords.hasNext()) {
+                writer.append(sortedRecords.next());
+                records++;
+            }
+        }
+        logger.info(String.format("Wrote sorted run '%s' with %d records.", runPath, records));
+        return runPath;
+    }
+
+    private static void deleteRunDir(Path runDir) throws IOException {
+        try (var runPaths = Files.list(runDir)) {
+            for (Path runPath : runPaths.toList()) {
+                Files.delete(runPath);
+            }
+        }
+        Files.delete(runDir);
+    }
+}
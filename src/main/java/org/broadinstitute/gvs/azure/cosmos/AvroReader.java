@@ -2,18 +2,15 @@ package org.broadinstitute.gvs.azure.cosmos;
 
 import com.azure.cosmos.models.CosmosBulkOperations;
 import com.azure.cosmos.models.CosmosItemOperation;
-import com.azure.cosmos.models.PartitionKey;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.IntNode;
 import com.fasterxml.jackson.databind.node.LongNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.generic.GenericDatumReader;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.avro.generic.GenericRecord;
 import reactor.core.publisher.Flux;
 
 import java.io.File;
@@ -26,8 +23,6 @@ import java.util.stream.Stream;
 
 public class AvroReader {
 
-    private static final Logger logger = LoggerFactory.getLogger(AvroReader.class);
-
     public static final long CHROMOSOME_MULTIPLIER = 1000000000000L;
 
     public static List<Path> findAvroPaths(String avroDir) {
@@ -61,105 +56,58 @@ public class AvroReader {
         return location.asLong() + Math.max(refLength, maxAltLength) - 1;
     }
 
-    private static void finishCurrentDocument(ObjectNode currentDocument, long currentMaxLocation, String dropState) {
-        ObjectNode location = (ObjectNode) currentDocument.get("location");
-        location.set("end", new LongNode(currentMaxLocation));
-        if (dropState != null) {
-            currentDocument.put("dropState", dropState);
-        }
+    // Cosmos stores all numbers as IEEE 754 doubles so a 64-bit checksum would not survive a round trip as a number.
+    static String formatChecksum(long checksum) {
+        return String.format("%016x", checksum);
+    }
+
+    static long parseChecksum(String checksum) {
+        return Long.parseUnsignedLong(checksum, 16);
     }
 
     @VisibleForTesting
     static List<ObjectNode> documentsForAvroPath(
             ObjectMapper objectMapper, Path avroPath, IngestArguments ingestArguments,
             AtomicLong recordCounter, AtomicLong documentCounter) {
-        // Where the Cosmos JSON serialization magic happens:
-        // https://github.com/Azure/azure-sdk-for-java/blob/80b12e48aeb6ad2f49e86643dfd7223bde7a9a0c/sdk/cosmos/azure-cosmos/src/main/java/com/azure/cosmos/implementation/JsonSerializable.java#L255
+        return documentsForAvroPath(objectMapper, avroPath, ingestArguments, SampleFilter.includeAll(), null, recordCounter, documentCounter);
+    }
 
+    /**
+     * @param summaryAccumulator if not null, accumulates per-sample summaries of the records of included samples
+     */
+    @VisibleForTesting
+    static List<ObjectNode> documentsForAvroPath(
+            ObjectMapper objectMapper, Path avroPath, IngestArguments ingestArguments, SampleFilter sampleFilter,
+            SampleSummaryAccumulator summaryAccumulator, AtomicLong recordCounter, AtomicLong documentCounter) {
         File avroFile = new File(avroPath.toString());
-        GenericDatumReader<?> reader = new GenericDatumReader<>();
         List<ObjectNode> documentList = new ArrayList<>();
-        ObjectNode currentDocument = null;
-        ArrayNode currentRecordArray = null;
-        Long currentSampleId = null;
-        long currentMaxLocation = -1L;
-        short currentChromosome = -1;
-        ArrayNode avroSchema = null;
-        String dropState = ingestArguments.getDropState();
-
-        String documentJsonTemplate = """
-                {
-                     "id": "%d",
-                     "sample_id" : %d,
-                     "chromosome": %d,
-                     "location" : {
-                         "start" : %d
-                     },
-                     "schema": [],
-                     "entries" : []
-                }
-                """;
 
-        try {
-            try (DataFileReader<?> dataFileReader = new DataFileReader<>(avroFile, reader)) {
-                for (Object avroRecord : dataFileReader) {
-                    Long longRecordCounter = recordCounter.incrementAndGet();
-                    ObjectNode record = (ObjectNode) objectMapper.readTree(avroRecord.toString());
-
-                    if (dropState != null) {
-                        String state = record.get("state").asText();
-                        // Drop this record if its state matches the drop state.
-                        if (state.equals(dropState)) {
-                            if (longRecordCounter % ingestArguments.getNumProgress() == 0L) logger.info(longRecordCounter + "...");
-                            continue;
-                        }
-                    }
-                    Long sampleId = record.get("sample_id").asLong();
-                    Short chromosome = (short) (record.get("location").asLong() / CHROMOSOME_MULTIPLIER);
-                    formatAvroRecordForCosmos(record);
-
-                    if (sampleId.equals(currentSampleId) && chromosome.equals(currentChromosome) &&
-                            currentRecordArray.size() < ingestArguments.getMaxRecordsPerDocument()) {
-                        // Add to current document
-                        currentRecordArray.add(record);
-                        currentMaxLocation = Math.max(currentMaxLocation, calculateEndLocation(record));
-                    } else {
-                        // Make a new document.
-                        if (currentDocument != null) {
-                            // Finish off the current document if there is one.
-                            finishCurrentDocument(currentDocument, currentMaxLocation, dropState);
-                        }
-                        if (avroSchema == null) {
-                            avroSchema = (ArrayNode) objectMapper.readTree(reader.getSchema().toString()).get("fields");
-                        }
-
-                        // On to the next document.
-                        String currentDocumentText = String.format(
-                                documentJsonTemplate, documentCounter.incrementAndGet(),
-                                sampleId, chromosome, record.get("location").asLong());
-
-                        currentDocument = (ObjectNode) objectMapper.readTree(currentDocumentText);
-                        documentList.add(currentDocument);
-
-                        ArrayNode schema = (ArrayNode) currentDocument.get("schema");
-                        schema.addAll(avroSchema);
-
-                        currentRecordArray = (ArrayNode) currentDocument.get("entries");
-                        currentRecordArray.add(record);
-                        currentSampleId = sampleId;
-                        currentChromosome = chromosome;
-                        currentMaxLocation = calculateEndLocation(record);
-                    }
-                    if (longRecordCounter % ingestArguments.getNumProgress() == 0L) logger.info(longRecordCounter + "...");
-                }
-                finishCurrentDocument(currentDocument, currentMaxLocation, dropState);
-            }
+        try (DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(avroFile, new GenericDatumReader<>())) {
+            new AvroDocumentIterator(objectMapper, dataFileReader, dataFileReader.getSchema(), ingestArguments,
+                    sampleFilter, summaryAccumulator, recordCounter, documentCounter).forEachRemaining(documentList::add);
             return documentList;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Builds documents from Avro files in any order by first sorting all of their records by `sample_id` and
+     * `location` with a bounded-memory external sort. Sorted runs are spilled to disk when the Flux is subscribed to
+     * and are deleted when it terminates.
+     */
+    public static Flux<ObjectNode> documentFluxFromUnsortedAvroPaths(
+            ObjectMapper objectMapper, Iterable<Path> avroPaths, IngestArguments ingestArguments, SampleFilter sampleFilter,
+            SampleSummaryAccumulator summaryAccumulator, AtomicLong recordCounter, AtomicLong documentCounter) {
+        return Flux.<ObjectNode, AvroExternalSorter.SortedRecords>using(
+                () -> AvroExternalSorter.sort(avroPaths, Path.of(ingestArguments.getSortSpillDir()),
+                        ingestArguments.getSortRunRecords(), ingestArguments.getSortMergeFanIn()),
+                sortedRecords -> Flux.<ObjectNode>fromIterable(() -> new AvroDocumentIterator(
+                        objectMapper, sortedRecords, sortedRecords.getSchema(), ingestArguments, sampleFilter,
+                        summaryAccumulator, recordCounter, documentCounter)),
+                AvroExternalSorter.SortedRecords::close);
+    }
+
     @VisibleForTesting
     static void formatAvroRecordForCosmos(ObjectNode record) {
         // The `sample_id` field will become redundant; the containing document will have the same sample_id for every
@@ -180,12 +128,71 @@ public class AvroReader {
         record.remove(fieldsToRemove);
     }
 
+    /**
+     * Round-robins documents across their partition key values, preserving the relative order of documents that share
+     * a partition key. Sample / location ordered input otherwise sends every in-flight write to the same partition.
+     */
+    @VisibleForTesting
+    static List<ObjectNode> interleaveByPartitionKey(
+            List<ObjectNode> documents, PartitionKeyStrategy partitionKeyStrategy, int buckets) {
+        Map<List<Object>, Deque<ObjectNode>> documentsByPartitionKey = new LinkedHashMap<>();
+        for (ObjectNode document : documents) {
+            documentsByPartitionKey.computeIfAbsent(
+                    partitionKeyStrategy.partitionKeyComponents(document, buckets), k -> new ArrayDeque<>()).add(document);
+        }
+
+        List<ObjectNode> interleaved = new ArrayList<>(documents.size());
+        while (!documentsByPartitionKey.isEmpty()) {
+            Iterator<Deque<ObjectNode>> it = documentsByPartitionKey.values().iterator();
+            while (it.hasNext()) {
+                Deque<ObjectNode> partitionDocuments = it.next();
+                interleaved.add(partitionDocuments.removeFirst());
+                if (partitionDocuments.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        return interleaved;
+    }
+
+    public static Flux<CosmosItemOperation> itemFluxFromUnsortedAvroPaths(
+            ObjectMapper objectMapper, Iterable<Path> avroPaths, IngestArguments ingestArguments, SampleFilter sampleFilter,
+            SampleSummaryAccumulator summaryAccumulator, AtomicLong recordCounter, AtomicLong documentCounter) {
+
+        PartitionKeyStrategy partitionKeyStrategy = ingestArguments.getPartitionKeyStrategy();
+        int buckets = ingestArguments.getPartitionKeyBuckets();
+        Flux<ObjectNode> documents = documentFluxFromUnsortedAvroPaths(
+                objectMapper, avroPaths, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter);
+        if (ingestArguments.isInterleaveSubmissions()) {
+            // There is no per-file document list to interleave in a single sorted stream, interleave within each
+            // submission batch's worth of documents instead. That spreads a sample's documents over its chromosomes or
+            // buckets, but not over samples, so `IngestArguments` rejects this for SAMPLE_ID and HIERARCHICAL.
+            documents = documents.buffer(ingestArguments.getSubmissionBatchSize()).flatMapIterable(
+                    batch -> interleaveByPartitionKey(batch, partitionKeyStrategy, buckets));
+        }
+        return documents.map(document -> itemOperation(document, partitionKeyStrategy, buckets));
+    }
+
     public static Flux<CosmosItemOperation> itemFluxFromAvroPath(
-            ObjectMapper objectMapper, Path avroPath, IngestArguments ingestArguments, AtomicLong recordCounter, AtomicLong documentCounter) {
+            ObjectMapper objectMapper, Path avroPath, IngestArguments ingestArguments, SampleFilter sampleFilter,
+            SampleSummaryAccumulator summaryAccumulator, AtomicLong recordCounter, AtomicLong documentCounter) {
+
+        PartitionKeyStrategy partitionKeyStrategy = ingestArguments.getPartitionKeyStrategy();
+        int buckets = ingestArguments.getPartitionKeyBuckets();
+        List<ObjectNode> documents = documentsForAvroPath(
+                objectMapper, avroPath, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter);
+        if (ingestArguments.isInterleaveSubmissions()) {
+            documents = interleaveByPartitionKey(documents, partitionKeyStrategy, buckets);
+        }
+        return Flux.fromIterable(documents).map(document -> itemOperation(document, partitionKeyStrategy, buckets));
+    }
 
-        List<ObjectNode> documents = documentsForAvroPath(objectMapper, avroPath, ingestArguments, recordCounter, documentCounter);
-        return Flux.fromIterable(documents).map(
-                document -> CosmosBulkOperations.getCreateItemOperation(
-                        document, new PartitionKey(document.get("sample_id").longValue())));
+    /**
+     * Upserts, since document ids are deterministic a sample whose earlier load failed part way can be reloaded over
+     * the documents that did get written.
+     */
+    @VisibleForTesting
+    static CosmosItemOperation itemOperation(ObjectNode document, PartitionKeyStrategy partitionKeyStrategy, int buckets) {
+        return CosmosBulkOperations.getUpsertItemOperation(document, partitionKeyStrategy.assignPartitionKey(document, buckets));
     }
 }
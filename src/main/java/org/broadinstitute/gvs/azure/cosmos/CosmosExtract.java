@@ -0,0 +1,118 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyBuilder;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts samples as single location-ordered streams of variant and reference intervals, written as JSON lines in
+ * sample order. Each sample's vets and ref_ranges documents are paged from their containers in `location.start` order
+ * and merged by {@link SampleIntervalMerger}. Several samples are fetched concurrently; memory is bounded by
+ * `--parallel-samples` x (2 x `--page-size` documents + `--buffered-intervals` intervals). The `ORDER BY` needs
+ * `/location/start` in the containers' indexing policy.
+ */
+public class CosmosExtract {
+
+    private static final Logger logger = LoggerFactory.getLogger(CosmosExtract.class);
+
+    private static final String SAMPLE_DOCUMENTS_QUERY =
+            "SELECT * FROM c WHERE c.sample_id = @sampleId ORDER BY c.location.start";
+
+    public static void main(String[] argv) {
+        CosmosIngest.configureLogging();
+        CosmosEndpointAndKey endpointAndKey = CosmosEndpointAndKey.fromEnvironment();
+        ExtractArguments extractArguments = ExtractArguments.parseArgs(argv);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        try (CosmosAsyncClient client = CosmosIngest.buildClient(endpointAndKey)) {
+            CosmosAsyncContainer vetsContainer = client.
+                    getDatabase(extractArguments.getDatabase()).
+                    getContainer(extractArguments.getVetsContainer());
+            CosmosAsyncContainer refRangesContainer = client.
+                    getDatabase(extractArguments.getDatabase()).
+                    getContainer(extractArguments.getRefRangesContainer());
+
+            List<Long> sampleIds = extractArguments.getSampleIds();
+            if (sampleIds.isEmpty()) {
+                TreeSet<Long> loadedSampleIds = new TreeSet<>(SampleFilter.queryLoadedSampleIds(vetsContainer));
+                loadedSampleIds.addAll(SampleFilter.queryLoadedSampleIds(refRangesContainer));
+                sampleIds = new ArrayList<>(loadedSampleIds);
+            }
+            logger.info(String.format("Extracting %d samples...", sampleIds.size()));
+
+            AtomicLong intervalCounter = new AtomicLong();
+            try (BufferedWriter writer = Files.newBufferedWriter(Path.of(extractArguments.getOutput()))) {
+                for (ObjectNode interval : intervalFlux(vetsContainer, refRangesContainer, sampleIds, extractArguments).toIterable()) {
+                    writer.write(objectMapper.writeValueAsString(interval));
+                    writer.newLine();
+                    intervalCounter.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            logger.info(String.format("Wrote %d intervals to '%s'.", intervalCounter.get(), extractArguments.getOutput()));
+        }
+    }
+
+    /**
+     * The intervals of all samples, in the order of `sampleIds`. Up to `--parallel-samples` samples are fetched and
+     * merged ahead of the one being consumed, each buffering at most `--buffered-intervals` intervals before
+     * backpressure stops it paging further documents.
+     */
+    public static Flux<ObjectNode> intervalFlux(CosmosAsyncContainer vetsContainer, CosmosAsyncContainer refRangesContainer,
+                                                List<Long> sampleIds, ExtractArguments extractArguments) {
+        return Flux.fromIterable(sampleIds).flatMapSequential(
+                sampleId -> Flux.<ObjectNode>fromIterable(() -> new SampleIntervalMerger(sampleId,
+                                documentIterator(vetsContainer, sampleId, extractArguments),
+                                documentIterator(refRangesContainer, sampleId, extractArguments)))
+                        // Paging blocks, so each sample is merged on its own elastic thread.
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .doOnComplete(() -> logger.info(String.format("Sample %d fetched.", sampleId))),
+                extractArguments.getParallelSamples(),
+                extractArguments.getBufferedIntervals());
+    }
+
+    /**
+     * One sample's documents in `location.start` order, requesting the next page only once the current one has been
+     * consumed.
+     */
+    private static Iterator<ObjectNode> documentIterator(CosmosAsyncContainer container, long sampleId,
+                                                         ExtractArguments extractArguments) {
+        SqlQuerySpec querySpec = new SqlQuerySpec(SAMPLE_DOCUMENTS_QUERY, new SqlParameter("@sampleId", sampleId));
+        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        if (extractArguments.getPartitionKeyStrategy() == PartitionKeyStrategy.SAMPLE_ID) {
+            // All of a sample's documents are in one logical partition, no need to fan out.
+            options.setPartitionKey(new PartitionKey(sampleId));
+        } else if (extractArguments.getPartitionKeyStrategy() == PartitionKeyStrategy.HIERARCHICAL) {
+            // A `/sample_id` prefix of the hierarchical key routes the query to the sample's partitions only. Cosmos
+            // numbers are doubles, as in `PartitionKeyStrategy.assignPartitionKey`.
+            options.setPartitionKey(new PartitionKeyBuilder().add((double) sampleId).build());
+        }
+        return container.queryItems(querySpec, options, ObjectNode.class)
+                .byPage(extractArguments.getPageSize())
+                .concatMapIterable(FeedResponse::getResults, 1)
+                .toIterable(1)
+                .iterator();
+    }
+}
@@ -5,7 +5,9 @@ import com.azure.cosmos.*;
 import com.azure.cosmos.implementation.ImplementationBridgeHelpers;
 import com.azure.cosmos.models.CosmosBulkExecutionOptions;
 import com.azure.cosmos.models.CosmosBulkItemResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
 import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.PartitionKey;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
@@ -15,6 +17,8 @@ import reactor.core.publisher.Mono;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class CosmosIngest {
@@ -26,6 +30,7 @@ public class CosmosIngest {
         CosmosEndpointAndKey endpointAndKey = CosmosEndpointAndKey.fromEnvironment();
         IngestArguments ingestArguments = IngestArguments.parseArgs(argv);
         List<Path> avroPaths = AvroReader.findAvroPaths(ingestArguments.getAvroDir());
+        boolean verified = true;
 
         try (CosmosAsyncClient client = buildClient(endpointAndKey)) {
             CosmosAsyncContainer container = client.
@@ -41,11 +46,59 @@ public class CosmosIngest {
                 container.enableLocalThroughputControlGroup(groupConfig);
             }
 
-            loadAvroFiles(container, avroPaths, ingestArguments);
+            if (ingestArguments.isVerify()) {
+                verified = IngestVerifier.verify(container, avroPaths, ingestArguments);
+            } else {
+                SampleFilter sampleFilter = buildSampleFilter(container, ingestArguments);
+                SampleSummaryAccumulator summaryAccumulator =
+                        ingestArguments.getSummaryContainer() != null ? new SampleSummaryAccumulator(ingestArguments.getContainer()) : null;
+                loadAvroFiles(container, avroPaths, ingestArguments, sampleFilter, summaryAccumulator);
+
+                if (summaryAccumulator != null) {
+                    // Summaries are only complete once every file has been read, so they are written last.
+                    writeSampleSummaries(client, summaryAccumulator, ingestArguments);
+                }
+
+                appendLoadedSamplesToManifest(ingestArguments, sampleFilter);
+            }
+        }
+
+        if (!verified) {
+            System.exit(1);
+        }
+    }
+
+    static SampleFilter buildSampleFilter(CosmosAsyncContainer container, IngestArguments ingestArguments) {
+        if (!ingestArguments.isSkipLoadedSamples()) {
+            return SampleFilter.includeAll();
+        }
+        Set<Long> loadedSampleIds;
+        if (ingestArguments.getSampleManifest() != null) {
+            loadedSampleIds = SampleFilter.readManifest(Path.of(ingestArguments.getSampleManifest()));
+            logger.info(String.format("Skipping %d samples listed in manifest '%s'.", loadedSampleIds.size(), ingestArguments.getSampleManifest()));
+        } else {
+            loadedSampleIds = SampleFilter.queryLoadedSampleIds(container);
+            logger.info(String.format("Skipping %d samples already in the container.", loadedSampleIds.size()));
+        }
+        return SampleFilter.excluding(loadedSampleIds);
+    }
+
+    /**
+     * Appends the samples loaded without any failed writes to the `--sample-manifest`, if there is one. Samples with
+     * failures are left out so a later `--skip-loaded-samples` run loads them again.
+     */
+    static void appendLoadedSamplesToManifest(IngestArguments ingestArguments, SampleFilter sampleFilter) {
+        if (!sampleFilter.getFailedSampleIds().isEmpty()) {
+            logger.warn(String.format("Samples %s had failed writes and are not considered loaded.",
+                    new TreeSet<>(sampleFilter.getFailedSampleIds())));
+        }
+        if (ingestArguments.getSampleManifest() != null) {
+            SampleFilter.appendToManifest(Path.of(ingestArguments.getSampleManifest()), sampleFilter.getLoadedSampleIds());
         }
     }
 
-    public static void loadAvroFiles(CosmosAsyncContainer container, Iterable<Path> avroPaths, IngestArguments ingestArguments) {
+    public static void loadAvroFiles(CosmosAsyncContainer container, Iterable<Path> avroPaths, IngestArguments ingestArguments,
+                                     SampleFilter sampleFilter, SampleSummaryAccumulator summaryAccumulator) {
         ObjectMapper objectMapper = new ObjectMapper();
         AtomicLong recordCounter = new AtomicLong();
         AtomicLong documentCounter = new AtomicLong();
@@ -58,11 +111,27 @@ public class CosmosIngest {
         // limited experience), but will quickly crash this loader with non-retryable 429s if throughput is too low.
         // At the time of this writing, continuous flux is not a good choice for serverless Cosmos since serverless
         // Cosmos has fixed 5K RU/s throughput.
-        if (ingestArguments.isContinuousFlux()) {
+        if (ingestArguments.isSortInput()) {
+            // The records of all Avro files are merged into a single sorted stream, so there is no file-by-file
+            // processing here; continuous vs non-continuous only decides whether submission batches overlap.
+            Flux<List<CosmosItemOperation>> batchFlux = AvroReader.itemFluxFromUnsortedAvroPaths(
+                    objectMapper, avroPaths, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter).buffer(submissionBatchSize);
+            if (ingestArguments.isContinuousFlux()) {
+                batchFlux.flatMap(
+                        batch -> {
+                            logger.info("Submitting batch " + submissionBatchCounter.incrementAndGet() + " at document counter " + documentCounter.get());
+                            return executeItemOperationsWithErrorHandling(container, Flux.fromIterable(batch), bulkExecutionOptions, sampleFilter);
+                        }).blockLast();
+            } else {
+                for (List<CosmosItemOperation> submissionBatch : batchFlux.toIterable()) {
+                    executeItemOperationsWithErrorHandling(container, Flux.fromIterable(submissionBatch), bulkExecutionOptions, sampleFilter).blockLast();
+                }
+            }
+        } else if (ingestArguments.isContinuousFlux()) {
             Flux<CosmosBulkItemResponse> responseFlux = Flux.fromIterable(avroPaths).flatMap(
                     avroPath -> {
                         Flux<CosmosItemOperation> itemFlux =
-                                AvroReader.itemFluxFromAvroPath(objectMapper, avroPath, ingestArguments, recordCounter, documentCounter);
+                                AvroReader.itemFluxFromAvroPath(objectMapper, avroPath, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter);
 
                         // This strange-looking buffering / non-overlapping sliding window construct worked around
                         // stallouts in the client library. I'm not sure why this was necessary (I would have thought
@@ -72,7 +141,7 @@ public class CosmosIngest {
                         return itemFlux.buffer(submissionBatchSize).flatMap(
                                 batch -> {
                                     logger.info("Submitting batch " + submissionBatchCounter.incrementAndGet() + " at document counter " + documentCounter.get());
-                                    return executeItemOperationsWithErrorHandling(container, Flux.fromIterable(batch), bulkExecutionOptions);
+                                    return executeItemOperationsWithErrorHandling(container, Flux.fromIterable(batch), bulkExecutionOptions, sampleFilter);
                                 });
                     }
             );
@@ -86,10 +155,10 @@ public class CosmosIngest {
                 logger.info(String.format("Processing Avro file '%s'...", avroPath));
 
                 Flux<CosmosItemOperation> itemFlux =
-                        AvroReader.itemFluxFromAvroPath(objectMapper, avroPath, ingestArguments, recordCounter, documentCounter);
+                        AvroReader.itemFluxFromAvroPath(objectMapper, avroPath, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter);
 
                 for (List<CosmosItemOperation> submissionBatch : itemFlux.buffer(submissionBatchSize).toIterable()) {
-                    executeItemOperationsWithErrorHandling(container, Flux.fromIterable(submissionBatch), bulkExecutionOptions).blockLast();
+                    executeItemOperationsWithErrorHandling(container, Flux.fromIterable(submissionBatch), bulkExecutionOptions, sampleFilter).blockLast();
                 }
 
                 logger.info(String.format("Avro file '%s' processing complete.", avroPath));
@@ -97,7 +166,27 @@ public class CosmosIngest {
         }
     }
 
-    private static CosmosBulkExecutionOptions buildCosmosBulkExecutionOptions(IngestArguments ingestArguments) {
+    /**
+     * Writes summaries to `--summary-container`, keyed on `sample_id` alone whatever the data containers' partition key
+     * strategy. Upserts rather than creates so that a reload of a sample replaces its previous summary.
+     */
+    static void writeSampleSummaries(CosmosAsyncClient client, SampleSummaryAccumulator summaryAccumulator,
+                                     IngestArguments ingestArguments) {
+        CosmosAsyncContainer summaryContainer = client.
+                getDatabase(ingestArguments.getDatabase()).
+                getContainer(ingestArguments.getSummaryContainer());
+        CosmosBulkExecutionOptions bulkExecutionOptions = buildCosmosBulkExecutionOptions(ingestArguments);
+
+        Flux<CosmosItemOperation> itemFlux = Flux.defer(() -> Flux.fromIterable(summaryAccumulator.toDocuments(new ObjectMapper())))
+                .map(document -> CosmosBulkOperations.getUpsertItemOperation(document, new PartitionKey(document.get("sample_id").longValue())));
+        // Submitted in batches like the data documents; see the stallout workaround in `loadAvroFiles`.
+        for (List<CosmosItemOperation> submissionBatch : itemFlux.buffer(ingestArguments.getSubmissionBatchSize()).toIterable()) {
+            executeItemOperationsWithErrorHandling(summaryContainer, Flux.fromIterable(submissionBatch), bulkExecutionOptions, null).blockLast();
+        }
+        logger.info(String.format("Wrote sample summaries to container '%s'.", ingestArguments.getSummaryContainer()));
+    }
+
+    static CosmosBulkExecutionOptions buildCosmosBulkExecutionOptions(IngestArguments ingestArguments) {
         // No idea what this bridge stuff is about, most of the getters/setters are not public on CosmosBulkExecutionOptions.
         ImplementationBridgeHelpers.CosmosBulkExecutionOptionsHelper.CosmosBulkExecutionOptionsAccessor accessor =
                 ImplementationBridgeHelpers.CosmosBulkExecutionOptionsHelper.getCosmosBulkExecutionOptionsAccessor();
@@ -111,25 +200,36 @@ public class CosmosIngest {
         return bulkExecutionOptions;
     }
 
-    private static Flux<CosmosBulkItemResponse> executeItemOperationsWithErrorHandling(CosmosAsyncContainer container,
-                                                                                       Flux<CosmosItemOperation> itemOperations,
-                                                                                       CosmosBulkExecutionOptions cosmosBulkExecutionOptions) {
+    /**
+     * @param sampleFilter if not null, has the `sample_id` of every failed operation recorded against it
+     */
+    static Flux<CosmosBulkItemResponse> executeItemOperationsWithErrorHandling(CosmosAsyncContainer container,
+                                                                               Flux<CosmosItemOperation> itemOperations,
+                                                                               CosmosBulkExecutionOptions cosmosBulkExecutionOptions,
+                                                                               SampleFilter sampleFilter) {
         // Only the first and last few lines are the "execute" bits, all the rest is error handling iff something goes wrong.
         return container.executeBulkOperations(itemOperations, cosmosBulkExecutionOptions).flatMap(operationResponse -> {
             CosmosBulkItemResponse itemResponse = operationResponse.getResponse();
             CosmosItemOperation itemOperation = operationResponse.getOperation();
 
+            boolean failed = false;
             if (operationResponse.getException() != null) {
                 logger.error("Bulk operation failed: " + operationResponse.getException());
+                failed = true;
             } else if (itemResponse == null || !itemResponse.isSuccessStatusCode()) {
                 ObjectNode objectNode = itemOperation.getItem();
                 logger.error(String.format(
                         "The operation for Item ID: [%s]  Item PartitionKey Value: [%s] did not complete " +
                                 "successfully with a %s/%s response code.",
                         objectNode.get("id"),
-                        objectNode.get("sample_id"),
+                        itemOperation.getPartitionKeyValue(),
                         itemResponse != null ? itemResponse.getStatusCode() : "n/a",
                         itemResponse != null ? itemResponse.getSubStatusCode() : "n/a"));
+                failed = true;
+            }
+            if (failed && sampleFilter != null) {
+                ObjectNode objectNode = itemOperation.getItem();
+                sampleFilter.recordFailure(objectNode.get("sample_id").asLong());
             }
 
             if (itemResponse == null) {
@@ -140,12 +240,12 @@ public class CosmosIngest {
         });
     }
 
-    private static void configureLogging() {
+    static void configureLogging() {
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
         root.setLevel(Level.INFO);
     }
 
-    private static CosmosAsyncClient buildClient(CosmosEndpointAndKey endpointAndKey) {
+    static CosmosAsyncClient buildClient(CosmosEndpointAndKey endpointAndKey) {
         return new CosmosClientBuilder().
                 endpoint(endpointAndKey.getEndpoint()).
                 key(endpointAndKey.getKey()).
@@ -0,0 +1,85 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.validators.PositiveInteger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExtractArguments {
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getVetsContainer() {
+        return vetsContainer;
+    }
+
+    public String getRefRangesContainer() {
+        return refRangesContainer;
+    }
+
+    public List<Long> getSampleIds() {
+        return sampleIds;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public PartitionKeyStrategy getPartitionKeyStrategy() {
+        return partitionKeyStrategy;
+    }
+
+    public Integer getParallelSamples() {
+        return parallelSamples;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public Integer getBufferedIntervals() {
+        return bufferedIntervals;
+    }
+
+    @Parameter(names = {"--database"}, description = "Cosmos database", required = true)
+    private String database;
+
+    @Parameter(names = {"--vets-container"}, description = "Cosmos container of vets documents")
+    private String vetsContainer = "vets";
+
+    @Parameter(names = {"--ref-ranges-container"}, description = "Cosmos container of ref_ranges documents")
+    private String refRangesContainer = "ref_ranges";
+
+    @Parameter(names = {"--sample-ids"}, description = "Comma separated sample ids to extract, in output order. Defaults to all samples in either container in sample_id order")
+    private List<Long> sampleIds = new ArrayList<>();
+
+    @Parameter(names = {"--output"}, description = "Local file to write intervals to as JSON lines", required = true)
+    private String output;
+
+    @Parameter(names = {"--partition-key-strategy"}, description = "The partition key strategy the containers were loaded with; with SAMPLE_ID or HIERARCHICAL each sample's documents are read with queries scoped to the sample's partitions")
+    private PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.SAMPLE_ID;
+
+    @Parameter(names = {"--parallel-samples"}, description = "Number of samples fetched and merged concurrently", validateWith = PositiveInteger.class)
+    private Integer parallelSamples = 4;
+
+    @Parameter(names = {"--page-size"}, description = "Documents per query page, i.e. documents held in memory per container for each sample being fetched. Each document holds up to the load's --max-records-per-document entries", validateWith = PositiveInteger.class)
+    private Integer pageSize = 50;
+
+    @Parameter(names = {"--buffered-intervals"}, description = "Merged intervals buffered for each sample fetched ahead of the sample being written", validateWith = PositiveInteger.class)
+    private Integer bufferedIntervals = 10000;
+
+    private ExtractArguments() {
+    }
+
+    public static ExtractArguments parseArgs(String [] argv) {
+        ExtractArguments args = new ExtractArguments();
+        JCommander.newBuilder().
+                addObject(args).
+                build().
+                parse(argv);
+        return args;
+    }
+}
@@ -0,0 +1,121 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.validators.PositiveInteger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class GeneratorArguments {
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public Integer getNumSamples() {
+        return numSamples;
+    }
+
+    public Long getFirstSampleId() {
+        return firstSampleId;
+    }
+
+    public Integer getVetsPerSample() {
+        return vetsPerSample;
+    }
+
+    public Integer getRefRangesPerSample() {
+        return refRangesPerSample;
+    }
+
+    public Integer getNumChromosomes() {
+        return numChromosomes;
+    }
+
+    public Double getMultiAllelicRate() {
+        return multiAllelicRate;
+    }
+
+    /**
+     * The `state` distribution as state -> relative weight, in the order specified.
+     */
+    public Map<String, Double> getStateDistribution() {
+        Map<String, Double> distribution = new LinkedHashMap<>();
+        for (String stateWeight : stateDistribution.split(",")) {
+            String[] parts = stateWeight.split("=");
+            if (parts.length != 2) {
+                throw new ParameterException("Invalid --state-distribution entry '" + stateWeight + "', expected state=weight");
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (!(weight >= 0)) {
+                throw new ParameterException("Invalid --state-distribution weight '" + stateWeight + "', weights must not be negative");
+            }
+            distribution.put(parts[0].trim(), weight);
+        }
+        return distribution;
+    }
+
+    public Integer getNumFiles() {
+        return numFiles;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public static class Fraction implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            double fraction = Double.parseDouble(value);
+            if (!(fraction >= 0 && fraction <= 1)) {
+                throw new ParameterException("Parameter " + name + " should be between 0 and 1 (found " + value + ")");
+            }
+        }
+    }
+
+    @Parameter(names = {"--output-dir"}, description = "Directory in which to create 'vets' and 'ref_ranges' directories of Avro files", required = true)
+    private String outputDir;
+
+    @Parameter(names = {"--samples"}, description = "Number of samples", validateWith = PositiveInteger.class)
+    private Integer numSamples = 10;
+
+    @Parameter(names = {"--first-sample-id"}, description = "sample_id of the first sample, the rest are numbered consecutively")
+    private Long firstSampleId = 1L;
+
+    @Parameter(names = {"--vets-per-sample"}, description = "Number of vet records per sample", validateWith = PositiveInteger.class)
+    private Integer vetsPerSample = 10000;
+
+    @Parameter(names = {"--ref-ranges-per-sample"}, description = "Number of ref_ranges records per sample", validateWith = PositiveInteger.class)
+    private Integer refRangesPerSample = 40000;
+
+    @Parameter(names = {"--chromosomes"}, description = "Number of chromosomes (1 to N) each sample's records are spread across", validateWith = PositiveInteger.class)
+    private Integer numChromosomes = 24;
+
+    @Parameter(names = {"--multi-allelic-rate"}, description = "Fraction of vet records with more than one alt allele", validateWith = Fraction.class)
+    private Double multiAllelicRate = 0.05;
+
+    @Parameter(names = {"--state-distribution"}, description = "Relative non-negative weights of ref_ranges states as comma separated state=weight pairs")
+    private String stateDistribution = "0=0.15,1=0.02,2=0.1,3=0.2,4=0.35,5=0.08,6=0.1";
+
+    @Parameter(names = {"--files"}, description = "Number of Avro files per table", validateWith = PositiveInteger.class)
+    private Integer numFiles = 1;
+
+    @Parameter(names = {"--seed"}, description = "Random seed, output records are fully determined by the seed and the other arguments")
+    private Long seed = 0L;
+
+    private GeneratorArguments() {
+    }
+
+    public static GeneratorArguments parseArgs(String [] argv) {
+        GeneratorArguments args = new GeneratorArguments();
+        JCommander.newBuilder().
+                addObject(args).
+                build().
+                parse(argv);
+        // Fail fast on a bad state distribution.
+        args.getStateDistribution();
+        return args;
+    }
+}
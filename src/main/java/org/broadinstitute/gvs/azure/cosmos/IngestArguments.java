@@ -1,8 +1,11 @@
 package org.broadinstitute.gvs.azure.cosmos;
 
 import com.azure.cosmos.implementation.batch.BatchRequestResponseConstants;
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.validators.PositiveInteger;
 import com.google.common.annotations.VisibleForTesting;
 
 public class IngestArguments {
@@ -42,6 +45,50 @@ public class IngestArguments {
         return continuousFlux;
     }
 
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public PartitionKeyStrategy getPartitionKeyStrategy() {
+        return partitionKeyStrategy;
+    }
+
+    public Integer getPartitionKeyBuckets() {
+        return partitionKeyBuckets;
+    }
+
+    public boolean isInterleaveSubmissions() {
+        return interleaveSubmissions;
+    }
+
+    public boolean isSortInput() {
+        return sortInput;
+    }
+
+    public Integer getSortRunRecords() {
+        return sortRunRecords;
+    }
+
+    public Integer getSortMergeFanIn() {
+        return sortMergeFanIn;
+    }
+
+    public String getSortSpillDir() {
+        return sortSpillDir;
+    }
+
+    public boolean isSkipLoadedSamples() {
+        return skipLoadedSamples;
+    }
+
+    public String getSampleManifest() {
+        return sampleManifest;
+    }
+
+    public String getSummaryContainer() {
+        return summaryContainer;
+    }
+
     public Integer getTargetThroughput() {
         return targetThroughput;
     }
@@ -104,6 +151,49 @@ public class IngestArguments {
     @Parameter(names = {"--continuous-flux"}, description = "Whether to submit to Cosmos file-by-file (default) or in a continuous Flux")
     private boolean continuousFlux = false;
 
+    @Parameter(names = {"--verify"}, description = "Instead of loading, compare per-sample document counts, record counts and checksums computed from the Avro files against those already in the container")
+    private boolean verify = false;
+
+    @Parameter(names = {"--partition-key-strategy"}, description = "How documents map to partition keys, must match the container's partition key path(s): SAMPLE_ID, SAMPLE_ID_CHROMOSOME, HIERARCHICAL or HASHED_BUCKET")
+    private PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategy.SAMPLE_ID;
+
+    @Parameter(names = {"--partition-key-buckets"}, description = "Number of hash buckets per sample for the HASHED_BUCKET partition key strategy", validateWith = PositiveInteger.class)
+    private Integer partitionKeyBuckets = 16;
+
+    @Parameter(names = {"--interleave-submissions"}, description = "Round-robin the documents of each Avro file across partition key values rather than submitting them in sample / location order")
+    private boolean interleaveSubmissions = false;
+
+    @Parameter(names = {"--sort-input"}, description = "Externally sort the records of all Avro files by sample_id and location before building documents, for exports without an ORDER BY")
+    private boolean sortInput = false;
+
+    @Parameter(names = {"--sort-run-records"}, description = "Maximum number of records held in memory per sorted run when sorting input", validateWith = PositiveInteger.class)
+    private Integer sortRunRecords = 1000000;
+
+    // A fan-in of one would never reduce the number of runs.
+    public static class AtLeastTwo implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            if (Integer.parseInt(value) < 2) {
+                throw new ParameterException("Parameter " + name + " should be at least 2 (found " + value + ")");
+            }
+        }
+    }
+
+    @Parameter(names = {"--sort-merge-fan-in"}, description = "Maximum number of sorted runs merged at once, and so open at once, when sorting input; more runs than this are merged in several passes", validateWith = AtLeastTwo.class)
+    private Integer sortMergeFanIn = 64;
+
+    @Parameter(names = {"--sort-spill-dir"}, description = "Local directory for sorted runs when sorting input")
+    private String sortSpillDir = System.getProperty("java.io.tmpdir");
+
+    @Parameter(names = {"--skip-loaded-samples"}, description = "Skip records for samples already loaded, as listed in --sample-manifest if specified or otherwise found with a query against the container. Without a manifest, any sample with at least one document counts as loaded, including one whose earlier load failed part way; run --verify to find those")
+    private boolean skipLoadedSamples = false;
+
+    @Parameter(names = {"--sample-manifest"}, description = "Local file of loaded sample ids, one per line; the samples loaded by this invocation without any failed writes are appended once loading completes")
+    private String sampleManifest;
+
+    @Parameter(names = {"--summary-container"}, description = "Cosmos container, partitioned on /sample_id, into which to upsert one summary document per loaded sample with per-chromosome record counts and coverage statistics once loading completes")
+    private String summaryContainer;
+
     @Parameter(names = {"--target-throughput"}, description = "Value to specify for Cosmos container local target throughput")
     private Integer targetThroughput;
 
@@ -133,6 +223,13 @@ public class IngestArguments {
                 addObject(args).
                 build().
                 parse(argv);
+        if (args.sortInput && args.interleaveSubmissions &&
+                (args.partitionKeyStrategy == PartitionKeyStrategy.SAMPLE_ID || args.partitionKeyStrategy == PartitionKeyStrategy.HIERARCHICAL)) {
+            // The sorted stream can only be interleaved a submission batch at a time, and a batch is nearly always a
+            // single sample, so these strategies would see no interleaving at all.
+            throw new ParameterException(String.format(
+                    "--interleave-submissions has no effect with --sort-input and the %s partition key strategy", args.partitionKeyStrategy));
+        }
         return args;
     }
 }
@@ -0,0 +1,134 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IngestVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestVerifier.class);
+
+    // Only the small top-level properties written by `AvroReader`, never the `entries` payloads. With the SAMPLE_ID
+    // partition key strategy this runs once per sample scoped to the sample's logical partition, which needs no index.
+    private static final String PROJECTION_QUERY = "SELECT c.sample_id, c.record_count, c.checksum FROM c";
+
+    // Partition key strategies that spread a sample over several logical partitions filter on `sample_id` instead,
+    // which needs `/sample_id` in the container's indexing policy.
+    private static final String SAMPLES_PROJECTION_QUERY = PROJECTION_QUERY + " WHERE ARRAY_CONTAINS(@sampleIds, c.sample_id)";
+
+    private static final int SAMPLE_IDS_PER_QUERY = 100;
+
+    private static final int CONCURRENT_SAMPLE_QUERIES = 16;
+
+    /**
+     * Per-sample aggregate of document checksums. Checksums are combined by wrapping addition so the aggregate does
+     * not depend on the order in which documents are built locally or returned by Cosmos.
+     */
+    @VisibleForTesting
+    record SampleTally(long documentCount, long recordCount, long checksum) {
+        SampleTally plus(SampleTally other) {
+            return new SampleTally(
+                    documentCount + other.documentCount,
+                    recordCount + other.recordCount,
+                    checksum + other.checksum);
+        }
+    }
+
+    @VisibleForTesting
+    static Map<Long, SampleTally> tallyAvroPaths(ObjectMapper objectMapper, Iterable<Path> avroPaths, IngestArguments ingestArguments) {
+        // The documents have to be built exactly as they were for the load (same grouping and drop state) for the
+        // checksums to line up, but nothing is sent to Cosmos.
+        Map<Long, SampleTally> tallies = new TreeMap<>();
+        AtomicLong recordCounter = new AtomicLong();
+        AtomicLong documentCounter = new AtomicLong();
+        if (ingestArguments.isSortInput()) {
+            for (ObjectNode document : AvroReader.documentFluxFromUnsortedAvroPaths(objectMapper, avroPaths, ingestArguments, SampleFilter.includeAll(), null, recordCounter, documentCounter).toIterable()) {
+                tallies.merge(document.get("sample_id").asLong(), tallyDocument(document), SampleTally::plus);
+            }
+            return tallies;
+        }
+        for (Path avroPath : avroPaths) {
+            logger.info(String.format("Tallying Avro file '%s'...", avroPath));
+            for (ObjectNode document : AvroReader.documentsForAvroPath(objectMapper, avroPath, ingestArguments, recordCounter, documentCounter)) {
+                tallies.merge(document.get("sample_id").asLong(), tallyDocument(document), SampleTally::plus);
+            }
+        }
+        return tallies;
+    }
+
+    private static Flux<ObjectNode> projectionFlux(CosmosAsyncContainer container, Collection<Long> sampleIds,
+                                                   PartitionKeyStrategy partitionKeyStrategy) {
+        if (partitionKeyStrategy == PartitionKeyStrategy.SAMPLE_ID) {
+            return Flux.fromIterable(sampleIds).flatMap(sampleId -> {
+                CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+                options.setPartitionKey(new PartitionKey(sampleId));
+                return container.queryItems(PROJECTION_QUERY, options, ObjectNode.class);
+            }, CONCURRENT_SAMPLE_QUERIES);
+        }
+        return Flux.fromIterable(Lists.partition(new ArrayList<>(sampleIds), SAMPLE_IDS_PER_QUERY)).concatMap(chunk ->
+                container.queryItems(new SqlQuerySpec(SAMPLES_PROJECTION_QUERY, new SqlParameter("@sampleIds", chunk)),
+                        new CosmosQueryRequestOptions(), ObjectNode.class));
+    }
+
+    private static Map<Long, SampleTally> tallyContainer(CosmosAsyncContainer container, Collection<Long> sampleIds,
+                                                         PartitionKeyStrategy partitionKeyStrategy) {
+        Map<Long, SampleTally> tallies = new TreeMap<>();
+        long documentsWithoutChecksum = 0;
+        for (ObjectNode projection : projectionFlux(container, sampleIds, partitionKeyStrategy).toIterable()) {
+            if (!projection.has("checksum")) {
+                // Loaded by a version of this code that did not write checksums.
+                documentsWithoutChecksum++;
+                continue;
+            }
+            tallies.merge(projection.get("sample_id").asLong(), tallyDocument(projection), SampleTally::plus);
+        }
+        if (documentsWithoutChecksum > 0) {
+            logger.warn(documentsWithoutChecksum + " documents in the container have no checksum and cannot be verified.");
+        }
+        return tallies;
+    }
+
+    private static SampleTally tallyDocument(ObjectNode document) {
+        return new SampleTally(1, document.get("record_count").asLong(), AvroReader.parseChecksum(document.get("checksum").asText()));
+    }
+
+    @VisibleForTesting
+    static List<String> compareTallies(Map<Long, SampleTally> expected, Map<Long, SampleTally> actual) {
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<Long, SampleTally> entry : expected.entrySet()) {
+            SampleTally actualTally = actual.get(entry.getKey());
+            if (actualTally == null) {
+                mismatches.add(String.format("Sample %d: missing from container, expected %s", entry.getKey(), entry.getValue()));
+            } else if (!actualTally.equals(entry.getValue())) {
+                mismatches.add(String.format("Sample %d: expected %s, found %s", entry.getKey(), entry.getValue(), actualTally));
+            }
+        }
+        return mismatches;
+    }
+
+    public static boolean verify(CosmosAsyncContainer container, Iterable<Path> avroPaths, IngestArguments ingestArguments) {
+        Map<Long, SampleTally> expected = tallyAvroPaths(new ObjectMapper(), avroPaths, ingestArguments);
+        // Samples only in the container are not read at all; the Avro directory may be one of several loaded batches.
+        Map<Long, SampleTally> actual = tallyContainer(container, expected.keySet(), ingestArguments.getPartitionKeyStrategy());
+
+        List<String> mismatches = compareTallies(expected, actual);
+        mismatches.forEach(logger::error);
+        if (mismatches.isEmpty()) {
+            logger.info(String.format("Verified %d samples.", expected.size()));
+        }
+        return mismatches.isEmpty();
+    }
+}
@@ -0,0 +1,123 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosBulkExecutionOptions;
+import com.azure.cosmos.models.CosmosBulkItemResponse;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads several containers (e.g. vets and ref_ranges) in one invocation, concurrently, sharing one set of decode threads
+ * and one RU/s budget that is redistributed between the containers as they run.
+ */
+public class JointCosmosIngest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JointCosmosIngest.class);
+
+    public static void main(String[] argv) {
+        CosmosIngest.configureLogging();
+        CosmosEndpointAndKey endpointAndKey = CosmosEndpointAndKey.fromEnvironment();
+        JointIngestArguments jointIngestArguments = JointIngestArguments.parseArgs(argv);
+        List<IngestArguments> loads = jointIngestArguments.getLoads();
+
+        ThroughputBudgetScheduler budgetScheduler = new ThroughputBudgetScheduler(jointIngestArguments.getTotalThroughput());
+        Scheduler decodeScheduler = Schedulers.newParallel("avro-decode", jointIngestArguments.getDecodeThreads());
+
+        try (CosmosAsyncClient client = CosmosIngest.buildClient(endpointAndKey)) {
+            List<Flux<CosmosBulkItemResponse>> loadFluxes = new ArrayList<>();
+            List<Runnable> onCompletion = new ArrayList<>();
+            for (IngestArguments load : loads) {
+                CosmosAsyncContainer container = client.
+                        getDatabase(load.getDatabase()).
+                        getContainer(load.getContainer());
+                budgetScheduler.register(load.getContainer(), container);
+
+                SampleFilter sampleFilter = CosmosIngest.buildSampleFilter(container, load);
+                SampleSummaryAccumulator summaryAccumulator = load.getSummaryContainer() != null ? new SampleSummaryAccumulator(load.getContainer()) : null;
+                loadFluxes.add(loadFlux(container, load, sampleFilter, summaryAccumulator, budgetScheduler,
+                        decodeScheduler, jointIngestArguments.getDecodeThreads()));
+                if (summaryAccumulator != null) {
+                    // Summaries go to their own container once every load has finished with the budget.
+                    onCompletion.add(() -> CosmosIngest.writeSampleSummaries(client, summaryAccumulator, load));
+                }
+                onCompletion.add(() -> CosmosIngest.appendLoadedSamplesToManifest(load, sampleFilter));
+            }
+
+            Disposable rebalancing = Flux.interval(Duration.ofSeconds(jointIngestArguments.getRebalanceIntervalSeconds()))
+                    .subscribe(tick -> budgetScheduler.rebalance());
+            try {
+                Flux.merge(loadFluxes).blockLast();
+            } finally {
+                rebalancing.dispose();
+            }
+            onCompletion.forEach(Runnable::run);
+        } finally {
+            decodeScheduler.dispose();
+        }
+    }
+
+    private static Flux<CosmosBulkItemResponse> loadFlux(CosmosAsyncContainer container, IngestArguments ingestArguments,
+                                                         SampleFilter sampleFilter, SampleSummaryAccumulator summaryAccumulator,
+                                                         ThroughputBudgetScheduler budgetScheduler,
+                                                         Scheduler decodeScheduler, int decodeThreads) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        AtomicLong recordCounter = new AtomicLong();
+        AtomicLong documentCounter = new AtomicLong();
+        AtomicLong submissionBatchCounter = new AtomicLong();
+        String name = ingestArguments.getContainer();
+        List<Path> avroPaths = AvroReader.findAvroPaths(ingestArguments.getAvroDir());
+
+        // Decoding happens on the shared decode threads when each item Flux is subscribed to.
+        Flux<CosmosItemOperation> itemFlux;
+        if (ingestArguments.isSortInput()) {
+            itemFlux = AvroReader.itemFluxFromUnsortedAvroPaths(
+                    objectMapper, avroPaths, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter)
+                    .subscribeOn(decodeScheduler);
+        } else {
+            itemFlux = Flux.fromIterable(avroPaths).flatMap(
+                    avroPath -> Flux.defer(() -> AvroReader.itemFluxFromAvroPath(
+                                    objectMapper, avroPath, ingestArguments, sampleFilter, summaryAccumulator, recordCounter, documentCounter))
+                            .subscribeOn(decodeScheduler),
+                    // No point in decoding more files at once than there are threads; decoded files wait in memory.
+                    decodeThreads);
+        }
+
+        Flux<List<CosmosItemOperation>> batchFlux = itemFlux.buffer(ingestArguments.getSubmissionBatchSize());
+        Flux<CosmosBulkItemResponse> responseFlux;
+        if (ingestArguments.isContinuousFlux()) {
+            responseFlux = batchFlux.flatMap(batch -> submitBatch(container, batch, ingestArguments, sampleFilter, budgetScheduler, submissionBatchCounter, documentCounter));
+        } else {
+            responseFlux = batchFlux.concatMap(batch -> submitBatch(container, batch, ingestArguments, sampleFilter, budgetScheduler, submissionBatchCounter, documentCounter));
+        }
+        return responseFlux
+                .doOnNext(response -> budgetScheduler.recordCharge(name, response.getRequestCharge()))
+                .doOnComplete(() -> budgetScheduler.markFinished(name));
+    }
+
+    private static Flux<CosmosBulkItemResponse> submitBatch(CosmosAsyncContainer container, List<CosmosItemOperation> batch,
+                                                            IngestArguments ingestArguments, SampleFilter sampleFilter,
+                                                            ThroughputBudgetScheduler budgetScheduler,
+                                                            AtomicLong submissionBatchCounter, AtomicLong documentCounter) {
+        String name = ingestArguments.getContainer();
+        CosmosBulkExecutionOptions bulkExecutionOptions = CosmosIngest.buildCosmosBulkExecutionOptions(ingestArguments);
+        String groupName = budgetScheduler.getThroughputControlGroupName(name);
+        bulkExecutionOptions.setThroughputControlGroupName(groupName);
+
+        logger.info(String.format("Submitting %s batch %d at document counter %d with throughput control group '%s'",
+                name, submissionBatchCounter.incrementAndGet(), documentCounter.get(), groupName));
+        return CosmosIngest.executeItemOperationsWithErrorHandling(container, Flux.fromIterable(batch), bulkExecutionOptions, sampleFilter);
+    }
+}
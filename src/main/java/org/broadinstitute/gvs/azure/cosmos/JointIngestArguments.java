@@ -0,0 +1,101 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.converters.IParameterSplitter;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class JointIngestArguments {
+    public String getDatabase() {
+        return database;
+    }
+
+    public List<IngestArguments> getLoads() {
+        List<IngestArguments> loads = new ArrayList<>();
+        for (String loadSpec : loadSpecs) {
+            loads.add(parseLoadSpec(database, loadSpec));
+        }
+        return loads;
+    }
+
+    public Integer getTotalThroughput() {
+        return totalThroughput;
+    }
+
+    public Integer getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public Integer getRebalanceIntervalSeconds() {
+        return rebalanceIntervalSeconds;
+    }
+
+    // Load specs are themselves comma separated, don't let JCommander split them.
+    public static class NoSplitter implements IParameterSplitter {
+        @Override
+        public List<String> split(String value) {
+            return List.of(value);
+        }
+    }
+
+    @Parameter(names = {"--database"}, description = "Cosmos database", required = true)
+    private String database;
+
+    @Parameter(names = {"--load"}, description = "A container to load, repeatable. Comma separated `option=value` (or bare `option` for flags) loader options without leading dashes, e.g. 'container=vets,avro-dir=/mnt/data/vets,max-records-per-document=6000'", required = true, splitter = NoSplitter.class)
+    private List<String> loadSpecs = new ArrayList<>();
+
+    @Parameter(names = {"--total-throughput"}, description = "RU/s budget shared by all containers being loaded", required = true, validateWith = PositiveInteger.class)
+    private Integer totalThroughput;
+
+    @Parameter(names = {"--decode-threads"}, description = "Number of threads shared by all loads for Avro decoding and document building", validateWith = PositiveInteger.class)
+    private Integer decodeThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--rebalance-interval-seconds"}, description = "How often to redistribute the RU/s budget based on observed RU charges", validateWith = PositiveInteger.class)
+    private Integer rebalanceIntervalSeconds = 10;
+
+    private JointIngestArguments() {
+    }
+
+    @VisibleForTesting
+    static IngestArguments parseLoadSpec(String database, String loadSpec) {
+        List<String> argv = new ArrayList<>(List.of("--database", database));
+        for (String option : loadSpec.split(",")) {
+            String[] keyValue = option.split("=", 2);
+            String name = keyValue[0].trim();
+            if (name.equals("database") || name.equals("target-throughput") || name.equals("verify")) {
+                throw new ParameterException(String.format("Option '%s' cannot be specified in load spec '%s'", name, loadSpec));
+            }
+            argv.add("--" + name);
+            if (keyValue.length == 2) {
+                argv.add(keyValue[1].trim());
+            }
+        }
+        return IngestArguments.parseArgs(argv.toArray(new String[0]));
+    }
+
+    public static JointIngestArguments parseArgs(String [] argv) {
+        JointIngestArguments args = new JointIngestArguments();
+        JCommander.newBuilder().
+                addObject(args).
+                build().
+                parse(argv);
+        // Fail fast on bad load specs.
+        List<IngestArguments> loads = args.getLoads();
+        Set<String> containers = new HashSet<>();
+        for (IngestArguments load : loads) {
+            // Summary ids are unique per container, so two loads into one container would overwrite each other's
+            // summaries, and compete for the container's throughput control groups besides.
+            if (!containers.add(load.getContainer())) {
+                throw new ParameterException(String.format("Container '%s' is loaded more than once", load.getContainer()));
+            }
+        }
+        return args;
+    }
+}
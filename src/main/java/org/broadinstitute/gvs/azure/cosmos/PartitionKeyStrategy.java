@@ -0,0 +1,86 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyBuilder;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hashing;
+
+import java.util.List;
+
+/**
+ * How documents are mapped to Cosmos logical partitions. The container must have been created with the matching
+ * partition key path(s), listed on each constant.
+ */
+public enum PartitionKeyStrategy {
+    /**
+     * `/sample_id`. Simple, but since exports are ordered by sample every in-flight write lands on the same logical
+     * (and so physical) partition.
+     */
+    SAMPLE_ID {
+        @Override
+        List<Object> partitionKeyComponents(ObjectNode document, int buckets) {
+            return List.of(document.get("sample_id").longValue());
+        }
+    },
+    /**
+     * `/partition_key`, a synthetic "sample_id-chromosome" string.
+     */
+    SAMPLE_ID_CHROMOSOME {
+        @Override
+        List<Object> partitionKeyComponents(ObjectNode document, int buckets) {
+            String partitionKey = String.format("%d-%d", document.get("sample_id").longValue(), document.get("chromosome").intValue());
+            document.put(SYNTHETIC_PARTITION_KEY, partitionKey);
+            return List.of(partitionKey);
+        }
+    },
+    /**
+     * Hierarchical (MultiHash) partition key on `/sample_id` then `/chromosome`. Queries for a single sample can still
+     * be routed using a prefix of the key.
+     */
+    HIERARCHICAL {
+        @Override
+        List<Object> partitionKeyComponents(ObjectNode document, int buckets) {
+            return List.of(document.get("sample_id").longValue(), document.get("chromosome").longValue());
+        }
+    },
+    /**
+     * `/partition_key`, a synthetic "sample_id-bucket" string where the bucket is a hash of the document's start
+     * location. Spreads a sample over `--partition-key-buckets` logical partitions regardless of chromosome.
+     */
+    HASHED_BUCKET {
+        @Override
+        List<Object> partitionKeyComponents(ObjectNode document, int buckets) {
+            long start = document.get("location").get("start").longValue();
+            int bucket = Math.floorMod(Hashing.murmur3_32_fixed().hashLong(start).asInt(), buckets);
+            String partitionKey = String.format("%d-%d", document.get("sample_id").longValue(), bucket);
+            document.put(SYNTHETIC_PARTITION_KEY, partitionKey);
+            return List.of(partitionKey);
+        }
+    };
+
+    public static final String SYNTHETIC_PARTITION_KEY = "partition_key";
+
+    /**
+     * Returns the values making up this document's partition key, adding the synthetic partition key property to the
+     * document if this strategy uses one.
+     */
+    abstract List<Object> partitionKeyComponents(ObjectNode document, int buckets);
+
+    public PartitionKey assignPartitionKey(ObjectNode document, int buckets) {
+        List<Object> components = partitionKeyComponents(document, buckets);
+        if (components.size() == 1) {
+            return new PartitionKey(components.get(0));
+        }
+
+        PartitionKeyBuilder builder = new PartitionKeyBuilder();
+        for (Object component : components) {
+            if (component instanceof String string) {
+                builder.add(string);
+            } else {
+                // Cosmos numbers are doubles.
+                builder.add(((Number) component).doubleValue());
+            }
+        }
+        return builder.build();
+    }
+}
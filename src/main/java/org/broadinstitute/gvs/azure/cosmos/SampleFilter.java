@@ -0,0 +1,104 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Decides which samples' records are turned into documents, and keeps track of the samples that were. Used for
+ * incremental loads that skip samples already present in the container.
+ */
+public class SampleFilter {
+
+    // Projection only, never reads the `entries` payloads.
+    private static final String LOADED_SAMPLES_QUERY = "SELECT DISTINCT c.sample_id FROM c";
+
+    private final Set<Long> excludedSampleIds;
+    private final Set<Long> includedSampleIds = ConcurrentHashMap.newKeySet();
+    private final Set<Long> failedSampleIds = ConcurrentHashMap.newKeySet();
+
+    private SampleFilter(Set<Long> excludedSampleIds) {
+        this.excludedSampleIds = excludedSampleIds;
+    }
+
+    public static SampleFilter includeAll() {
+        return new SampleFilter(Set.of());
+    }
+
+    public static SampleFilter excluding(Set<Long> excludedSampleIds) {
+        return new SampleFilter(Set.copyOf(excludedSampleIds));
+    }
+
+    public boolean includes(long sampleId) {
+        if (excludedSampleIds.contains(sampleId)) {
+            return false;
+        }
+        includedSampleIds.add(sampleId);
+        return true;
+    }
+
+    public Set<Long> getIncludedSampleIds() {
+        return Collections.unmodifiableSet(includedSampleIds);
+    }
+
+    /**
+     * Records that a write for this sample did not succeed, so the sample must not be considered loaded.
+     */
+    public void recordFailure(long sampleId) {
+        failedSampleIds.add(sampleId);
+    }
+
+    public Set<Long> getFailedSampleIds() {
+        return Collections.unmodifiableSet(failedSampleIds);
+    }
+
+    /**
+     * The included samples all of whose writes succeeded.
+     */
+    public Set<Long> getLoadedSampleIds() {
+        Set<Long> loadedSampleIds = new HashSet<>(includedSampleIds);
+        loadedSampleIds.removeAll(failedSampleIds);
+        return loadedSampleIds;
+    }
+
+    public static Set<Long> queryLoadedSampleIds(CosmosAsyncContainer container) {
+        Set<Long> sampleIds = new HashSet<>();
+        for (ObjectNode projection : container.queryItems(LOADED_SAMPLES_QUERY, new CosmosQueryRequestOptions(), ObjectNode.class).toIterable()) {
+            sampleIds.add(projection.get("sample_id").asLong());
+        }
+        return sampleIds;
+    }
+
+    /**
+     * Reads a manifest of one `sample_id` per line. A manifest that does not exist yet is empty.
+     */
+    public static Set<Long> readManifest(Path manifestPath) {
+        if (!Files.exists(manifestPath)) {
+            return Set.of();
+        }
+        try (Stream<String> lines = Files.lines(manifestPath)) {
+            Set<Long> sampleIds = new HashSet<>();
+            lines.map(String::trim).filter(line -> !line.isEmpty()).map(Long::valueOf).forEach(sampleIds::add);
+            return sampleIds;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void appendToManifest(Path manifestPath, Collection<Long> sampleIds) {
+        List<String> lines = sampleIds.stream().sorted().map(String::valueOf).toList();
+        try {
+            Files.write(manifestPath, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming merge of one sample's vets and ref_ranges documents into a single stream of intervals ordered by start
+ * location. Both document streams must be in `location.start` order, as written by `AvroReader`. Documents are
+ * unpacked one at a time as the merge reaches them, so only the current document of each stream is held.
+ * <p>
+ * Each interval is its `entries` record with `sample_id` restored, a `type` of "variant" or "reference" and an inclusive
+ * `end` from {@link AvroReader#calculateEndLocation}. Variants are emitted as they are; reference blocks are trimmed
+ * (and split if necessary) to exclude the bases covered by variants, so reference intervals never overlap a variant.
+ */
+class SampleIntervalMerger implements Iterator<ObjectNode> {
+
+    public static final String VARIANT = "variant";
+    public static final String REFERENCE = "reference";
+
+    private final long sampleId;
+    private final Iterator<ObjectNode> vetEntries;
+    private final Iterator<ObjectNode> refEntries;
+
+    private ObjectNode nextVariant = null;
+    private long nextVariantEnd;
+    // The current reference block if any, bases before currentReferenceStart have been emitted or are variant bases.
+    private ObjectNode currentReference = null;
+    private long currentReferenceStart;
+    private long currentReferenceEnd;
+    // Reference bases up to and including this location are covered by variants already emitted.
+    private long variantCoveredThrough = Long.MIN_VALUE;
+
+    SampleIntervalMerger(long sampleId, Iterator<ObjectNode> vetDocuments, Iterator<ObjectNode> refDocuments) {
+        this.sampleId = sampleId;
+        this.vetEntries = new EntryIterator(vetDocuments);
+        this.refEntries = new EntryIterator(refDocuments);
+        advanceVariant();
+        advanceReference();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextVariant != null || currentReference != null;
+    }
+
+    @Override
+    public ObjectNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        if (nextVariant != null &&
+                (currentReference == null || nextVariant.get("location").asLong() <= currentReferenceStart)) {
+            ObjectNode variant = interval(nextVariant, VARIANT, nextVariantEnd);
+            variantCoveredThrough = Math.max(variantCoveredThrough, nextVariantEnd);
+            advanceVariant();
+            if (currentReference != null && !trimReference()) {
+                advanceReference();
+            }
+            return variant;
+        }
+
+        // The reference block starts before the next variant (if any), emit up to the variant or the end of the block.
+        long end = currentReferenceEnd;
+        if (nextVariant != null) {
+            end = Math.min(end, nextVariant.get("location").asLong() - 1);
+        }
+        ObjectNode reference = referenceInterval(currentReferenceStart, end);
+        if (end == currentReferenceEnd) {
+            advanceReference();
+        } else {
+            currentReferenceStart = end + 1;
+        }
+        return reference;
+    }
+
+    private void advanceVariant() {
+        nextVariant = vetEntries.hasNext() ? vetEntries.next() : null;
+        if (nextVariant != null) {
+            nextVariantEnd = AvroReader.calculateEndLocation(nextVariant);
+        }
+    }
+
+    private void advanceReference() {
+        currentReference = null;
+        while (refEntries.hasNext()) {
+            currentReference = refEntries.next();
+            currentReferenceStart = currentReference.get("location").asLong();
+            currentReferenceEnd = AvroReader.calculateEndLocation(currentReference);
+            if (trimReference()) {
+                return;
+            }
+            // Entirely covered by variants.
+            currentReference = null;
+        }
+    }
+
+    /**
+     * @return whether any of the current reference block remains after excluding bases covered by variants
+     */
+    private boolean trimReference() {
+        currentReferenceStart = Math.max(currentReferenceStart, variantCoveredThrough + 1);
+        return currentReferenceStart <= currentReferenceEnd;
+    }
+
+    private ObjectNode referenceInterval(long start, long end) {
+        if (start == currentReference.get("location").asLong() && end == currentReferenceEnd) {
+            return interval(currentReference, REFERENCE, end);
+        }
+        ObjectNode piece = currentReference.deepCopy();
+        piece.put("location", start);
+        piece.put("length", (int) (end - start + 1));
+        return interval(piece, REFERENCE, end);
+    }
+
+    private ObjectNode interval(ObjectNode entry, String type, long end) {
+        entry.put("sample_id", sampleId);
+        entry.put("type", type);
+        entry.put("end", end);
+        return entry;
+    }
+
+    /**
+     * Flattens documents into their `entries`, unpacking the next document only when the previous one is exhausted.
+     */
+    static class EntryIterator implements Iterator<ObjectNode> {
+        private final Iterator<ObjectNode> documents;
+        private Iterator<JsonNode> entries = Collections.emptyIterator();
+
+        EntryIterator(Iterator<ObjectNode> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!entries.hasNext() && documents.hasNext()) {
+                entries = documents.next().get("entries").elements();
+            }
+            return entries.hasNext();
+        }
+
+        @Override
+        public ObjectNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (ObjectNode) entries.next();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accumulates per-sample, per-chromosome statistics as records stream through document building, for writing one small
+ * summary document per sample to a separate summary container once loading is complete. A sample's records may be
+ * spread over several Avro files processed concurrently, hence accumulating across the whole load rather than emitting
+ * on sample boundaries. Summary documents are partitioned by `sample_id` alone, so each is a point read with
+ * `readItem(summaryId(container, sampleId), new PartitionKey(sampleId), ...)` whatever the data containers' partition
+ * keys. The data container is part of the id so the vets and ref_ranges summaries of a sample can share a summary
+ * container.
+ * <p>
+ * Summaries count every record of an included sample, including records in the `--drop-state` that are not written to
+ * data documents, so that reference coverage by state is complete.
+ */
+public class SampleSummaryAccumulator {
+
+    private static final String SUMMARY_ID_PREFIX = "summary-";
+
+    private final String container;
+    private final Map<Long, SampleSummary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * @param container the data container being loaded
+     */
+    public SampleSummaryAccumulator(String container) {
+        this.container = container;
+    }
+
+    public static String summaryId(String container, long sampleId) {
+        return SUMMARY_ID_PREFIX + container + "-" + sampleId;
+    }
+
+    public SampleSummary forSample(long sampleId) {
+        return summaries.computeIfAbsent(sampleId, id -> new SampleSummary(container, id));
+    }
+
+    public List<ObjectNode> toDocuments(ObjectMapper objectMapper) {
+        List<ObjectNode> documents = new ArrayList<>();
+        for (SampleSummary summary : new TreeMap<>(summaries).values()) {
+            documents.add(summary.toDocument(objectMapper));
+        }
+        return documents;
+    }
+
+    private static class ChromosomeStats {
+        long records = 0;
+        long firstLocation = Long.MAX_VALUE;
+        long lastLocation = Long.MIN_VALUE;
+        // vets
+        long variants = 0;
+        long multiAllelic = 0;
+        final Map<String, long[]> variantsByGenotype = new TreeMap<>();
+        // ref_ranges
+        long refBlocks = 0;
+        final Map<String, long[]> refBasesByState = new TreeMap<>();
+        final Map<String, long[]> refBlocksByState = new TreeMap<>();
+    }
+
+    private static void increment(Map<String, long[]> counters, String key, long amount) {
+        counters.computeIfAbsent(key, k -> new long[1])[0] += amount;
+    }
+
+    private static ObjectNode countersToNode(ObjectMapper objectMapper, Map<String, long[]> counters) {
+        ObjectNode node = objectMapper.createObjectNode();
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            node.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return node;
+    }
+
+    public static class SampleSummary {
+        private final String container;
+        private final long sampleId;
+        private final Map<Short, ChromosomeStats> chromosomes = new TreeMap<>();
+
+        private SampleSummary(String container, long sampleId) {
+            this.container = container;
+            this.sampleId = sampleId;
+        }
+
+        /**
+         * Reads fields directly off the decoded Avro record; `length` means a ref_ranges record, otherwise a vet.
+         */
+        public synchronized void accept(GenericRecord avroRecord) {
+            long location = ((Number) avroRecord.get("location")).longValue();
+            short chromosome = (short) (location / AvroReader.CHROMOSOME_MULTIPLIER);
+            ChromosomeStats stats = chromosomes.computeIfAbsent(chromosome, c -> new ChromosomeStats());
+
+            stats.records++;
+            stats.firstLocation = Math.min(stats.firstLocation, location);
+            stats.lastLocation = Math.max(stats.lastLocation, location);
+
+            if (avroRecord.getSchema().getField("length") != null) {
+                Object length = avroRecord.get("length");
+                Object state = avroRecord.get("state");
+                String stateKey = state == null ? "null" : state.toString();
+                stats.refBlocks++;
+                increment(stats.refBlocksByState, stateKey, 1);
+                increment(stats.refBasesByState, stateKey, length == null ? 0 : ((Number) length).longValue());
+            } else {
+                Object alt = avroRecord.get("alt");
+                Object genotype = avroRecord.get("call_GT");
+                stats.variants++;
+                if (alt != null && alt.toString().indexOf(',') >= 0) {
+                    stats.multiAllelic++;
+                }
+                increment(stats.variantsByGenotype, genotype == null ? "null" : genotype.toString(), 1);
+            }
+        }
+
+        synchronized ObjectNode toDocument(ObjectMapper objectMapper) {
+            ObjectNode document = objectMapper.createObjectNode();
+            document.put("id", summaryId(container, sampleId));
+            document.put("sample_id", sampleId);
+            document.put("container", container);
+
+            long totalRecords = 0;
+            ArrayNode chromosomesNode = document.putArray("chromosomes");
+            for (Map.Entry<Short, ChromosomeStats> entry : chromosomes.entrySet()) {
+                ChromosomeStats stats = entry.getValue();
+                totalRecords += stats.records;
+
+                ObjectNode chromosomeNode = chromosomesNode.addObject();
+                chromosomeNode.put("chromosome", entry.getKey().intValue());
+                chromosomeNode.put("records", stats.records);
+                chromosomeNode.put("first_location", stats.firstLocation);
+                chromosomeNode.put("last_location", stats.lastLocation);
+                if (stats.variants > 0) {
+                    chromosomeNode.put("variants", stats.variants);
+                    chromosomeNode.put("multi_allelic", stats.multiAllelic);
+                    chromosomeNode.set("variants_by_call_GT", countersToNode(objectMapper, stats.variantsByGenotype));
+                }
+                if (stats.refBlocks > 0) {
+                    chromosomeNode.put("ref_blocks", stats.refBlocks);
+                    chromosomeNode.set("ref_blocks_by_state", countersToNode(objectMapper, stats.refBlocksByState));
+                    chromosomeNode.set("ref_bases_by_state", countersToNode(objectMapper, stats.refBasesByState));
+                }
+            }
+            document.put("total_records", totalRecords);
+            return document;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic vets and ref_ranges Avro files with the same schemas and Snappy compression as the BigQuery
+ * `EXPORT DATA` statements in the README, ordered by `sample_id` and `location`. Records are fully determined by the
+ * seed and the other generator arguments (but not the number of files), so ingest benchmarks can be reproduced at scale
+ * on a machine without access to real cohort exports.
+ * <p>
+ * As in real GVS data, reference blocks never cover the bases of a sample's variants: each sample / chromosome's vets
+ * are generated first, spread over the chromosome, and the reference blocks then tile the same span leaving gaps at the
+ * bases the vets cover. Block lengths average the span over the blocks not cut short by a variant, so the tiling needs at
+ * least one more block per chromosome than there are variants to reach the end.
+ */
+public class SyntheticAvroGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticAvroGenerator.class);
+
+    @VisibleForTesting
+    static final Schema VET_SCHEMA = new Schema.Parser().parse("""
+            {"type":"record","name":"Root","fields":[
+              {"name":"sample_id","type":["null","long"],"default":null},
+              {"name":"location","type":["null","long"],"default":null},
+              {"name":"ref","type":["null","string"],"default":null},
+              {"name":"alt","type":["null","string"],"default":null},
+              {"name":"AS_RAW_MQ","type":["null","string"],"default":null},
+              {"name":"AS_RAW_MQRankSum","type":["null","string"],"default":null},
+              {"name":"QUALapprox","type":["null","string"],"default":null},
+              {"name":"AS_QUALapprox","type":["null","string"],"default":null},
+              {"name":"AS_RAW_ReadPosRankSum","type":["null","string"],"default":null},
+              {"name":"AS_SB_TABLE","type":["null","string"],"default":null},
+              {"name":"AS_VarDP","type":["null","string"],"default":null},
+              {"name":"call_GT","type":["null","string"],"default":null},
+              {"name":"call_AD","type":["null","string"],"default":null},
+              {"name":"call_GQ","type":["null","long"],"default":null},
+              {"name":"call_PGT","type":["null","string"],"default":null},
+              {"name":"call_PID","type":["null","string"],"default":null},
+              {"name":"call_PL","type":["null","string"],"default":null}]}
+            """);
+
+    @VisibleForTesting
+    static final Schema REF_RANGES_SCHEMA = new Schema.Parser().parse("""
+            {"type":"record","name":"Root","fields":[
+              {"name":"sample_id","type":["null","long"],"default":null},
+              {"name":"location","type":["null","long"],"default":null},
+              {"name":"length","type":["null","long"],"default":null},
+              {"name":"state","type":["null","string"],"default":null}]}
+            """);
+
+    // Roughly the length of the longest human chromosome; positions are spread over this range.
+    private static final long CHROMOSOME_LENGTH = 250000000L;
+
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    // Separate random streams for the two tables so changing one table's arguments does not change the other's records.
+    private static final long VETS_STREAM = 0x5645545300000000L;
+    private static final long REF_RANGES_STREAM = 0x5245465300000000L;
+
+    /**
+     * Appends records to a sequence of Avro files, starting a new file every `recordsPerFile` records. File names
+     * follow the BigQuery export convention of a zero-padded shard number.
+     */
+    private static class RollingAvroWriter implements Closeable {
+        private final Path dir;
+        private final String prefix;
+        private final Schema schema;
+        private final long recordsPerFile;
+
+        private DataFileWriter<GenericRecord> writer = null;
+        private long recordsInFile = 0;
+        private int fileIndex = 0;
+
+        RollingAvroWriter(Path dir, String prefix, Schema schema, long recordsPerFile) throws IOException {
+            Files.createDirectories(dir);
+            this.dir = dir;
+            this.prefix = prefix;
+            this.schema = schema;
+            this.recordsPerFile = recordsPerFile;
+        }
+
+        void append(GenericRecord record) throws IOException {
+            if (writer == null || recordsInFile == recordsPerFile) {
+                close();
+                Path path = dir.resolve(String.format("%s_%012d.avro", prefix, fileIndex++));
+                logger.info(String.format("Writing Avro file '%s'...", path));
+                writer = new DataFileWriter<>(new GenericDatumWriter<>(schema));
+                writer.setCodec(CodecFactory.snappyCodec());
+                writer.create(schema, path.toFile());
+                recordsInFile = 0;
+            }
+            writer.append(record);
+            recordsInFile++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    public static void main(String[] argv) {
+        CosmosIngest.configureLogging();
+        generate(GeneratorArguments.parseArgs(argv));
+    }
+
+    public static void generate(GeneratorArguments args) {
+        Path outputDir = Path.of(args.getOutputDir());
+        int numChromosomes = args.getNumChromosomes();
+        double multiAllelicRate = args.getMultiAllelicRate();
+        StateSampler stateSampler = new StateSampler(args.getStateDistribution());
+
+        try (RollingAvroWriter vets = new RollingAvroWriter(outputDir.resolve("vets"), "vet",
+                VET_SCHEMA, recordsPerFile(args.getNumSamples(), args.getVetsPerSample(), args.getNumFiles()));
+             RollingAvroWriter refRanges = new RollingAvroWriter(outputDir.resolve("ref_ranges"), "ref_ranges",
+                     REF_RANGES_SCHEMA, recordsPerFile(args.getNumSamples(), args.getRefRangesPerSample(), args.getNumFiles()))) {
+
+            for (int i = 0; i < args.getNumSamples(); i++) {
+                long sampleId = args.getFirstSampleId() + i;
+                logger.info(String.format("Generating sample %d...", sampleId));
+
+                SplittableRandom vetRandom = new SplittableRandom(sampleSeed(args.getSeed(), VETS_STREAM, sampleId));
+                SplittableRandom refRangesRandom = new SplittableRandom(sampleSeed(args.getSeed(), REF_RANGES_STREAM, sampleId));
+                for (int chromosome = 1; chromosome <= numChromosomes; chromosome++) {
+                    int numVets = recordsForChromosome(args.getVetsPerSample(), numChromosomes, chromosome);
+                    List<long[]> variantBases = writeVets(vets, vetRandom, sampleId, chromosome, numVets, multiAllelicRate);
+
+                    int numRefRanges = recordsForChromosome(args.getRefRangesPerSample(), numChromosomes, chromosome);
+                    writeRefRanges(refRanges, refRangesRandom, sampleId, chromosome, numRefRanges, stateSampler, variantBases);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Each sample gets its own random stream so its records do not depend on the samples generated before it.
+    private static long sampleSeed(long seed, long stream, long sampleId) {
+        return Hashing.murmur3_128().newHasher().putLong(seed).putLong(stream).putLong(sampleId).hash().asLong();
+    }
+
+    private static long recordsPerFile(long numSamples, long recordsPerSample, int numFiles) {
+        long totalRecords = numSamples * recordsPerSample;
+        return Math.max(1, (totalRecords + numFiles - 1) / numFiles);
+    }
+
+    @VisibleForTesting
+    static int recordsForChromosome(int recordsPerSample, int numChromosomes, int chromosome) {
+        return recordsPerSample / numChromosomes + (chromosome <= recordsPerSample % numChromosomes ? 1 : 0);
+    }
+
+    /**
+     * @return the positions covered by the vets written, as ordered, non-overlapping inclusive [start, end] ranges
+     */
+    private static List<long[]> writeVets(RollingAvroWriter writer, SplittableRandom random, long sampleId, int chromosome,
+                                          int numVets, double multiAllelicRate) throws IOException {
+        List<long[]> variantBases = new ArrayList<>();
+        long meanGap = Math.max(2, CHROMOSOME_LENGTH / (numVets + 1L));
+        long position = 0;
+        for (int i = 0; i < numVets; i++) {
+            position += 1 + random.nextLong(2 * meanGap);
+
+            char refBase = randomBase(random);
+            String ref = String.valueOf(refBase);
+            String alt = randomAllele(random, refBase);
+            boolean multiAllelic = random.nextDouble() < multiAllelicRate;
+            if (multiAllelic) {
+                String secondAlt;
+                do {
+                    secondAlt = randomAllele(random, refBase);
+                } while (secondAlt.equals(alt));
+                alt = alt + "," + secondAlt;
+            } else if (random.nextDouble() < 0.1) {
+                // Deletion.
+                ref = refBase + randomBases(random, 1 + random.nextInt(4));
+                alt = String.valueOf(refBase);
+            }
+
+            int refDepth = random.nextInt(40);
+            int altDepth = 1 + random.nextInt(40);
+            int qual = 30 + random.nextInt(2000);
+            boolean homVar = !multiAllelic && random.nextDouble() < 0.4;
+
+            GenericRecord record = new GenericData.Record(VET_SCHEMA);
+            record.put("sample_id", sampleId);
+            record.put("location", chromosome * AvroReader.CHROMOSOME_MULTIPLIER + position);
+            record.put("ref", ref);
+            record.put("alt", alt);
+            record.put("QUALapprox", String.valueOf(qual));
+            record.put("call_GQ", (long) Math.min(99, 10 + random.nextInt(120)));
+            if (multiAllelic) {
+                int secondAltDepth = 1 + random.nextInt(40);
+                record.put("AS_RAW_MQ", String.format("0|%d|%d", 60000 + random.nextInt(80000), 60000 + random.nextInt(80000)));
+                record.put("AS_QUALapprox", String.format("%d|%d", qual / 2, qual - qual / 2));
+                record.put("AS_SB_TABLE", String.format("0,0|%d,%d|%d,%d", altDepth / 2, altDepth - altDepth / 2, secondAltDepth / 2, secondAltDepth - secondAltDepth / 2));
+                record.put("AS_VarDP", String.format("0|%d|%d", altDepth, secondAltDepth));
+                record.put("call_GT", "1/2");
+                record.put("call_AD", String.format("0,%d,%d", altDepth, secondAltDepth));
+                record.put("call_PL", String.format("%d,%d,%d,%d,0,%d,%d,%d,%d,%d", qual, random.nextInt(1000), random.nextInt(1000),
+                        random.nextInt(1000), random.nextInt(1000), qual, random.nextInt(1000), random.nextInt(1000), qual));
+            } else {
+                record.put("AS_RAW_MQ", String.format("0|%d", 60000 + random.nextInt(80000)));
+                record.put("AS_QUALapprox", String.valueOf(qual));
+                record.put("AS_SB_TABLE", String.format("%d,%d|%d,%d", refDepth / 2, refDepth - refDepth / 2, altDepth / 2, altDepth - altDepth / 2));
+                record.put("AS_VarDP", String.format("%d|%d", refDepth, altDepth));
+                record.put("call_AD", String.format("%d,%d", refDepth, altDepth));
+                if (homVar) {
+                    record.put("call_GT", "1/1");
+                    record.put("call_PL", String.format("%d,%d,0", qual, random.nextInt(100)));
+                } else {
+                    record.put("call_GT", "0/1");
+                    record.put("call_PL", String.format("%d,0,%d", qual, random.nextInt(1500)));
+                    // Rank sums are only defined when there are both ref and alt reads.
+                    record.put("AS_RAW_MQRankSum", String.format(Locale.ROOT, "%.3f,1", random.nextDouble() * 8 - 4));
+                    record.put("AS_RAW_ReadPosRankSum", String.format(Locale.ROOT, "%.3f,1", random.nextDouble() * 8 - 4));
+                }
+                if (random.nextDouble() < 0.1) {
+                    record.put("call_PGT", random.nextBoolean() ? "0|1" : "1|0");
+                    record.put("call_PID", String.format("%d_%s_%s", position, ref, alt));
+                }
+            }
+            writer.append(record);
+
+            // Same extent as `AvroReader.calculateEndLocation`: the longest of the ref and alt alleles.
+            int extent = ref.length();
+            for (String altAllele : alt.split(",")) {
+                extent = Math.max(extent, altAllele.length());
+            }
+            long end = position + extent - 1;
+            long[] last = variantBases.isEmpty() ? null : variantBases.get(variantBases.size() - 1);
+            if (last != null && position <= last[1] + 1) {
+                last[1] = Math.max(last[1], end);
+            } else {
+                variantBases.add(new long[]{position, end});
+            }
+        }
+        return variantBases;
+    }
+
+    private static void writeRefRanges(RollingAvroWriter writer, SplittableRandom random, long sampleId, int chromosome,
+                                       int numRefRanges, StateSampler stateSampler, List<long[]> variantBases) throws IOException {
+        // The vets can run a little past CHROMOSOME_LENGTH, the blocks tile through the last of them.
+        long tilingEnd = variantBases.isEmpty() ? CHROMOSOME_LENGTH :
+                Math.max(CHROMOSOME_LENGTH, variantBases.get(variantBases.size() - 1)[1] + 1);
+        long position = 1;
+        int variantIndex = 0;
+        int written = 0;
+        while (written < numRefRanges) {
+            while (variantIndex < variantBases.size() && variantBases.get(variantIndex)[1] < position) {
+                variantIndex++;
+            }
+            long[] nextVariant = variantIndex < variantBases.size() ? variantBases.get(variantIndex) : null;
+            if (nextVariant != null && nextVariant[0] <= position) {
+                // Leave a gap where the variant is.
+                position = nextVariant[1] + 1;
+                continue;
+            }
+
+            // Blocks are contiguous apart from the variant gaps, a block ends early if it would run into a variant. Each
+            // block's mean length is the rest of the span over the blocks left that will not be cut short by one of the
+            // variants left, so the tiling ends close to `tilingEnd`.
+            int freeBlocks = Math.max(1, numRefRanges - written - (variantBases.size() - variantIndex));
+            long meanLength = Math.max(1, (tilingEnd - position + 1) / freeBlocks);
+            long length = 1 + random.nextLong(2 * meanLength - 1);
+            if (nextVariant != null) {
+                length = Math.min(length, nextVariant[0] - position);
+            }
+
+            GenericRecord record = new GenericData.Record(REF_RANGES_SCHEMA);
+            record.put("sample_id", sampleId);
+            record.put("location", chromosome * AvroReader.CHROMOSOME_MULTIPLIER + position);
+            record.put("length", length);
+            record.put("state", stateSampler.sample(random));
+            writer.append(record);
+            written++;
+
+            position += length;
+        }
+    }
+
+    private static char randomBase(SplittableRandom random) {
+        return BASES[random.nextInt(BASES.length)];
+    }
+
+    private static String randomBases(SplittableRandom random, int count) {
+        StringBuilder bases = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            bases.append(randomBase(random));
+        }
+        return bases.toString();
+    }
+
+    // A SNP most of the time, otherwise an insertion.
+    private static String randomAllele(SplittableRandom random, char refBase) {
+        if (random.nextDouble() < 0.1) {
+            return refBase + randomBases(random, 1 + random.nextInt(8));
+        }
+        char altBase;
+        do {
+            altBase = randomBase(random);
+        } while (altBase == refBase);
+        return String.valueOf(altBase);
+    }
+
+    @VisibleForTesting
+    static class StateSampler {
+        private final String[] states;
+        private final double[] cumulativeWeights;
+
+        StateSampler(Map<String, Double> distribution) {
+            states = new String[distribution.size()];
+            cumulativeWeights = new double[distribution.size()];
+            double total = 0;
+            int i = 0;
+            for (Map.Entry<String, Double> entry : distribution.entrySet()) {
+                total += entry.getValue();
+                states[i] = entry.getKey();
+                cumulativeWeights[i] = total;
+                i++;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("State distribution weights must sum to more than zero");
+            }
+        }
+
+        String sample(SplittableRandom random) {
+            double value = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return states[i];
+                }
+            }
+            return states[states.length - 1];
+        }
+    }
+}
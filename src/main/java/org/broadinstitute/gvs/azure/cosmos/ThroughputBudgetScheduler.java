@@ -0,0 +1,188 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.ThroughputControlGroupConfig;
+import com.azure.cosmos.ThroughputControlGroupConfigBuilder;
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Shares a single RU/s budget between several containers being loaded at the same time, shifting throughput towards the
+ * containers that are actually consuming it based on observed RU charges.
+ * <p>
+ * Throughput control groups cannot be reconfigured once enabled on a container, so each container gets a fixed ladder
+ * of groups at 1/TIERS, 2/TIERS, ... of the total budget and each submission batch is tagged with the group for the
+ * container's current allocation.
+ */
+public class ThroughputBudgetScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThroughputBudgetScheduler.class);
+
+    @VisibleForTesting
+    static final int TIERS = 10;
+
+    // A container using less than this fraction of its allocation gives the rest to the others...
+    private static final double UNDERUSE_FRACTION = 0.8;
+    // ...but keeps this much headroom over what it is using so it can ramp back up.
+    private static final double HEADROOM = 1.25;
+
+    private final int totalThroughput;
+    private final Map<String, DoubleAdder> chargesSinceRebalance = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tiers = new ConcurrentHashMap<>();
+    // Allocations in RU/s for containers still loading.
+    private final Map<String, Double> allocations = new HashMap<>();
+    private long lastRebalanceNanos = System.nanoTime();
+
+    public ThroughputBudgetScheduler(int totalThroughput) {
+        this.totalThroughput = totalThroughput;
+    }
+
+    private static String groupName(int tier) {
+        return "ru-budget-tier-" + tier;
+    }
+
+    public synchronized void register(String name, CosmosAsyncContainer container) {
+        if (allocations.containsKey(name)) {
+            throw new IllegalArgumentException("Container '" + name + "' is already registered");
+        }
+        if (allocations.size() == TIERS) {
+            // Every container needs at least the lowest tier and the tiers must not add up to more than the budget.
+            throw new IllegalArgumentException("At most " + TIERS + " containers can share a throughput budget");
+        }
+        for (int tier = 1; tier <= TIERS; tier++) {
+            ThroughputControlGroupConfig groupConfig =
+                    new ThroughputControlGroupConfigBuilder()
+                            .groupName(groupName(tier))
+                            .targetThroughput(Math.max(1, totalThroughput * tier / TIERS))
+                            .build();
+            container.enableLocalThroughputControlGroup(groupConfig);
+        }
+        chargesSinceRebalance.put(name, new DoubleAdder());
+        allocations.put(name, 0.0);
+        // Start from an equal split.
+        allocations.replaceAll((n, allocation) -> (double) totalThroughput / allocations.size());
+        updateTiers();
+    }
+
+    /**
+     * The throughput control group name submission batches for this container should currently use.
+     */
+    public String getThroughputControlGroupName(String name) {
+        return groupName(tiers.get(name));
+    }
+
+    public void recordCharge(String name, double requestCharge) {
+        chargesSinceRebalance.get(name).add(requestCharge);
+    }
+
+    public synchronized void markFinished(String name) {
+        allocations.remove(name);
+        logger.info(String.format("Container '%s' finished loading, %d still loading.", name, allocations.size()));
+        if (!allocations.isEmpty()) {
+            // Hand its share straight to the containers still loading.
+            double share = (double) totalThroughput / allocations.size();
+            allocations.replaceAll((n, allocation) -> share);
+            updateTiers();
+        }
+    }
+
+    public synchronized void rebalance() {
+        long now = System.nanoTime();
+        double seconds = (now - lastRebalanceNanos) / 1e9;
+        lastRebalanceNanos = now;
+        if (allocations.isEmpty() || seconds <= 0) {
+            return;
+        }
+
+        Map<String, Double> observedRates = new HashMap<>();
+        for (Map.Entry<String, DoubleAdder> entry : chargesSinceRebalance.entrySet()) {
+            double rate = entry.getValue().sumThenReset() / seconds;
+            if (allocations.containsKey(entry.getKey())) {
+                observedRates.put(entry.getKey(), rate);
+            }
+        }
+
+        Map<String, Double> nextAllocations = allocate(totalThroughput, allocations, observedRates);
+        allocations.putAll(nextAllocations);
+        updateTiers();
+
+        StringBuilder message = new StringBuilder("RU/s observed / allocated:");
+        for (String name : new TreeSet<>(allocations.keySet())) {
+            message.append(String.format(" %s %.0f / %.0f (tier %d);", name, observedRates.get(name), allocations.get(name), tiers.get(name)));
+        }
+        logger.info(message.toString());
+    }
+
+    /**
+     * Containers using most of their allocation split whatever the others are not using.
+     */
+    @VisibleForTesting
+    static Map<String, Double> allocate(double totalThroughput, Map<String, Double> allocations, Map<String, Double> observedRates) {
+        Map<String, Double> nextAllocations = new HashMap<>();
+        double minimum = totalThroughput / TIERS;
+        double committed = 0;
+        List<String> saturated = new ArrayList<>();
+
+        for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+            double observed = observedRates.getOrDefault(entry.getKey(), 0.0);
+            if (observed < UNDERUSE_FRACTION * entry.getValue()) {
+                double reduced = Math.max(minimum, observed * HEADROOM);
+                nextAllocations.put(entry.getKey(), reduced);
+                committed += reduced;
+            } else {
+                saturated.add(entry.getKey());
+            }
+        }
+
+        double remaining = Math.max(0, totalThroughput - committed);
+        if (saturated.isEmpty()) {
+            // Nobody is throughput bound; spread the remainder so whoever speeds up first has room to.
+            nextAllocations.replaceAll((name, allocation) -> allocation + remaining / allocations.size());
+        } else {
+            for (String name : saturated) {
+                nextAllocations.put(name, Math.max(minimum, remaining / saturated.size()));
+            }
+        }
+
+        // The minimums can add up to more than the budget, and the budget must never be oversubscribed.
+        double allocated = nextAllocations.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (allocated > totalThroughput) {
+            double scale = totalThroughput / allocated;
+            nextAllocations.replaceAll((name, allocation) -> allocation * scale);
+        }
+        return nextAllocations;
+    }
+
+    /**
+     * Maps allocations to tiers, rounding down so the groups in use never add up to more than the budget. Every
+     * container gets at least the lowest tier, paid for by the containers on the highest tiers.
+     */
+    @VisibleForTesting
+    static Map<String, Integer> tiersFor(Map<String, Double> allocations, double totalThroughput) {
+        Map<String, Integer> tiers = new HashMap<>();
+        for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+            // The epsilon keeps e.g. 2999.9999... from rounding down a whole tier.
+            int tier = (int) Math.floor(entry.getValue() / totalThroughput * TIERS + 1e-9);
+            tiers.put(entry.getKey(), Math.min(TIERS, Math.max(1, tier)));
+        }
+        int total = tiers.values().stream().mapToInt(Integer::intValue).sum();
+        while (total > TIERS) {
+            String highest = Collections.max(tiers.entrySet(), Map.Entry.comparingByValue()).getKey();
+            if (tiers.get(highest) == 1) {
+                throw new IllegalStateException("More containers than tiers");
+            }
+            tiers.merge(highest, -1, Integer::sum);
+            total--;
+        }
+        return tiers;
+    }
+
+    private void updateTiers() {
+        tiers.putAll(tiersFor(allocations, totalThroughput));
+    }
+}
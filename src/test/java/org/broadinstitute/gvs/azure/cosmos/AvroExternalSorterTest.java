@@ -0,0 +1,125 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Test
+public class AvroExternalSorterTest {
+
+    private static final String[] dummyArgvForTesting = {
+            "--container", "dummy-container",
+            "--database", "dummy-database",
+            "--avro-dir", "dummy-avro-dir"
+    };
+
+    // Writes the records of `avroPath` in reverse order to a new Avro file in `dir`.
+    private static Path writeReversed(Path avroPath, Path dir) throws IOException {
+        List<GenericRecord> records = new ArrayList<>();
+        Schema schema;
+        try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(avroPath.toString()), new GenericDatumReader<>())) {
+            schema = reader.getSchema();
+            reader.forEach(records::add);
+        }
+        Collections.reverse(records);
+
+        Path reversedPath = dir.resolve("reversed_" + avroPath.getFileName());
+        try (DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            writer.create(schema, reversedPath.toFile());
+            for (GenericRecord record : records) {
+                writer.append(record);
+            }
+        }
+        return reversedPath;
+    }
+
+    public void testSortMergesRunsAcrossFiles() throws IOException {
+        Path spillDir = Files.createTempDirectory("avro-sorter-test-");
+        List<Path> avroPaths = List.of(
+                AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples").get(0),
+                AvroReader.findAvroPaths("src/test/resources/vets/spanning_chromosomes").get(0));
+
+        List<GenericRecord> sorted = new ArrayList<>();
+        // Small runs and fan-in to force many spills and intermediate merge passes (16 -> 6 -> 2 runs).
+        try (AvroExternalSorter.SortedRecords sortedRecords = AvroExternalSorter.sort(avroPaths, spillDir, 7, 3)) {
+            sortedRecords.forEachRemaining(sorted::add);
+        }
+
+        Assert.assertEquals(sorted.size(), 110);
+        for (int i = 1; i < sorted.size(); i++) {
+            Assert.assertTrue(AvroExternalSorter.SAMPLE_LOCATION_ORDER.compare(sorted.get(i - 1), sorted.get(i)) <= 0);
+        }
+
+        // Runs are cleaned up on close.
+        try (Stream<Path> remaining = Files.list(spillDir)) {
+            Assert.assertEquals(remaining.count(), 0L);
+        }
+        Files.delete(spillDir);
+    }
+
+    public void testSortCleansUpOnFailure() throws IOException {
+        Path spillDir = Files.createTempDirectory("avro-sorter-test-");
+        // vets and ref_ranges schemas differ, the sort fails after writing runs for the first file.
+        List<Path> avroPaths = List.of(
+                AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples").get(0),
+                AvroReader.findAvroPaths("src/test/resources/ref_ranges/spanning_samples").get(0));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> AvroExternalSorter.sort(avroPaths, spillDir, 7, 3));
+
+        try (Stream<Path> remaining = Files.list(spillDir)) {
+            Assert.assertEquals(remaining.count(), 0L);
+        }
+        Files.delete(spillDir);
+    }
+
+    public void testUnsortedInputBuildsSameDocuments() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path workDir = Files.createTempDirectory("avro-sorter-test-");
+        Path sortedPath = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples").get(0);
+        Path reversedPath = writeReversed(sortedPath, workDir);
+
+        String[] argv = Arrays.copyOf(dummyArgvForTesting, dummyArgvForTesting.length + 6);
+        argv[dummyArgvForTesting.length] = "--max-records-per-document";
+        argv[dummyArgvForTesting.length + 1] = "10";
+        argv[dummyArgvForTesting.length + 2] = "--sort-run-records";
+        argv[dummyArgvForTesting.length + 3] = "30";
+        argv[dummyArgvForTesting.length + 4] = "--sort-spill-dir";
+        argv[dummyArgvForTesting.length + 5] = workDir.toString();
+        IngestArguments ingestArguments = IngestArguments.parseArgs(argv);
+
+        List<ObjectNode> expected = AvroReader.documentsForAvroPath(
+                objectMapper, sortedPath, ingestArguments, new AtomicLong(), new AtomicLong());
+        List<ObjectNode> actual = AvroReader.documentFluxFromUnsortedAvroPaths(
+                objectMapper, List.of(reversedPath), ingestArguments, SampleFilter.includeAll(), null, new AtomicLong(), new AtomicLong()).collectList().block();
+
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(actual.get(i).get("sample_id"), expected.get(i).get("sample_id"));
+            Assert.assertEquals(actual.get(i).get("location"), expected.get(i).get("location"));
+            Assert.assertEquals(actual.get(i).get("entries"), expected.get(i).get("entries"));
+            Assert.assertEquals(actual.get(i).get("checksum"), expected.get(i).get("checksum"));
+        }
+
+        Files.delete(reversedPath);
+        try (Stream<Path> remaining = Files.list(workDir)) {
+            Assert.assertEquals(remaining.count(), 0L);
+        }
+        Files.delete(workDir);
+    }
+}
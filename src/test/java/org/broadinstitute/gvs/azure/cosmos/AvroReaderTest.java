@@ -1,5 +1,7 @@
 package org.broadinstitute.gvs.azure.cosmos;
 
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemOperationType;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -243,6 +245,118 @@ public class AvroReaderTest {
         }
     }
 
+    public void testDocumentRecordCountsAndChecksums() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        IngestArguments ingestArguments = IngestArguments.parseArgs(dummyArgvForTesting);
+
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+
+        List<ObjectNode> documents = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, new AtomicLong(), new AtomicLong());
+        List<ObjectNode> documentsAgain = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, new AtomicLong(), new AtomicLong());
+
+        Assert.assertEquals(documents.size(), 2);
+        for (int i = 0; i < documents.size(); i++) {
+            ObjectNode document = documents.get(i);
+            Assert.assertEquals(document.get("record_count").asInt(), document.get("entries").size());
+            // Checksums are stored as strings since Cosmos numbers are doubles.
+            Assert.assertTrue(document.get("checksum").isTextual());
+            Assert.assertEquals(AvroReader.formatChecksum(AvroReader.parseChecksum(document.get("checksum").asText())),
+                    document.get("checksum").asText());
+            Assert.assertEquals(document.get("checksum"), documentsAgain.get(i).get("checksum"));
+        }
+        Assert.assertNotEquals(documents.get(0).get("checksum"), documents.get(1).get("checksum"));
+    }
+
+    public void testInterleaveByPartitionKey() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+
+        String[] args = Arrays.copyOf(dummyArgvForTesting, dummyArgvForTesting.length + 2);
+        args[dummyArgvForTesting.length] = "--max-records-per-document";
+        args[dummyArgvForTesting.length + 1] = "10";
+        IngestArguments ingestArguments = IngestArguments.parseArgs(args);
+
+        // 9 documents for sample 2 followed by 2 documents for sample 3.
+        List<ObjectNode> documents = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, new AtomicLong(), new AtomicLong());
+        Assert.assertEquals(documents.size(), 11);
+
+        List<ObjectNode> interleaved = AvroReader.interleaveByPartitionKey(documents, PartitionKeyStrategy.SAMPLE_ID, 1);
+        Assert.assertEquals(interleaved.size(), 11);
+        long[] expectedSampleIds = {2, 3, 2, 3, 2, 2, 2, 2, 2, 2, 2};
+        for (int i = 0; i < expectedSampleIds.length; i++) {
+            Assert.assertEquals(interleaved.get(i).get("sample_id").asLong(), expectedSampleIds[i]);
+        }
+        // Order within a partition key is preserved.
+        Assert.assertSame(interleaved.get(0), documents.get(0));
+        Assert.assertSame(interleaved.get(1), documents.get(9));
+        Assert.assertSame(interleaved.get(2), documents.get(1));
+        Assert.assertSame(interleaved.get(3), documents.get(10));
+    }
+
+    public void testDocumentsForAvroPathSkippingLoadedSamples() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        AtomicLong recordCounter = new AtomicLong();
+        AtomicLong documentCounter = new AtomicLong();
+        IngestArguments ingestArguments = IngestArguments.parseArgs(dummyArgvForTesting);
+
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+
+        // Sample 2 is already loaded, only sample 3 should produce documents.
+        SampleFilter sampleFilter = SampleFilter.excluding(Set.of(2L));
+        List<ObjectNode> documents = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, sampleFilter, null, recordCounter, documentCounter);
+
+        Assert.assertEquals(documents.size(), 1);
+        Assert.assertEquals(documents.get(0).get("sample_id").asLong(), 3L);
+        Assert.assertEquals(documents.get(0).get("entries").size(), 12);
+        Assert.assertEquals(recordCounter.get(), 100L);
+        Assert.assertEquals(documentCounter.get(), 1L);
+        Assert.assertEquals(sampleFilter.getIncludedSampleIds(), Set.of(3L));
+    }
+
+    public void testReloadAfterFailedWrites() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+
+        String[] args = Arrays.copyOf(dummyArgvForTesting, dummyArgvForTesting.length + 2);
+        args[dummyArgvForTesting.length] = "--max-records-per-document";
+        args[dummyArgvForTesting.length + 1] = "10";
+        IngestArguments ingestArguments = IngestArguments.parseArgs(args);
+
+        // 9 documents for sample 2 followed by 2 documents for sample 3, one of whose writes fails.
+        SampleFilter sampleFilter = SampleFilter.includeAll();
+        List<ObjectNode> documents = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, sampleFilter, null, new AtomicLong(), new AtomicLong());
+        Assert.assertEquals(documents.size(), 11);
+        Assert.assertEquals(documents.stream().map(d -> d.get("id").asText()).distinct().count(), 11L);
+        sampleFilter.recordFailure(3L);
+        Assert.assertEquals(sampleFilter.getLoadedSampleIds(), Set.of(2L));
+
+        // The reload only includes sample 3 and starts its counters over, but gives its documents the same ids.
+        SampleFilter reloadFilter = SampleFilter.excluding(sampleFilter.getLoadedSampleIds());
+        AtomicLong reloadDocumentCounter = new AtomicLong();
+        List<ObjectNode> reloadDocuments = AvroReader.documentsForAvroPath(
+                objectMapper, avroFiles.get(0), ingestArguments, reloadFilter, null, new AtomicLong(), reloadDocumentCounter);
+        Assert.assertEquals(reloadDocuments.size(), 2);
+        Assert.assertEquals(reloadDocumentCounter.get(), 2L);
+        for (int i = 0; i < reloadDocuments.size(); i++) {
+            ObjectNode document = documents.get(9 + i);
+            ObjectNode reloadDocument = reloadDocuments.get(i);
+            Assert.assertEquals(reloadDocument.get("id").asText(), document.get("id").asText());
+            Assert.assertEquals(reloadDocument.get("id").asText(),
+                    AvroDocumentIterator.documentId(3L, document.get("location").get("start").asLong(), 0));
+            Assert.assertEquals(reloadDocument.get("checksum"), document.get("checksum"));
+
+            // Upserted, so documents the failed load did write are replaced rather than conflicting.
+            CosmosItemOperation itemOperation = AvroReader.itemOperation(reloadDocument, PartitionKeyStrategy.SAMPLE_ID, 1);
+            Assert.assertEquals(itemOperation.getOperationType(), CosmosItemOperationType.UPSERT);
+        }
+        Assert.assertEquals(AvroDocumentIterator.documentId(3L, 1000000000005L, 1), "3-1000000000005-1");
+    }
+
     @Test
     public void testFormatAvroRecordForCosmos() throws JsonProcessingException {
         String unoptimizedString = """
@@ -25,6 +25,21 @@ public class IngestArgumentsTest {
         IngestArguments.parseArgs(new String[]{"--avro-dir", "myavros"});
     }
 
+    @Test(expectedExceptions = {ParameterException.class},
+            expectedExceptionsMessageRegExp = "--interleave-submissions has no effect with --sort-input and the SAMPLE_ID partition key strategy")
+    public void interleaveSortedSamples() {
+        IngestArguments.parseArgs(new String[]{
+                "--container", "mycontainer", "--database", "mydatabase", "--avro-dir", "myavros",
+                "--sort-input", "--interleave-submissions"});
+    }
+
+    public void interleaveSortedChromosomes() {
+        IngestArguments args = IngestArguments.parseArgs(new String[]{
+                "--container", "mycontainer", "--database", "mydatabase", "--avro-dir", "myavros",
+                "--sort-input", "--interleave-submissions", "--partition-key-strategy", "SAMPLE_ID_CHROMOSOME"});
+        Assert.assertTrue(args.isSortInput());
+        Assert.assertTrue(args.isInterleaveSubmissions());
+    }
 
     public void validInvocationWithDefaults() {
         IngestArguments args = IngestArguments.parseArgs(
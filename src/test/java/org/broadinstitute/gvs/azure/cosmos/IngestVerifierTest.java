@@ -0,0 +1,69 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+
+@Test
+public class IngestVerifierTest {
+
+    private static final String[] dummyArgvForTesting = {
+            "--container", "dummy-container",
+            "--database", "dummy-database",
+            "--avro-dir", "dummy-avro-dir"
+    };
+
+    public void testTallyAvroPaths() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+
+        String[] argv = Arrays.copyOf(dummyArgvForTesting, dummyArgvForTesting.length + 2);
+        argv[dummyArgvForTesting.length] = "--max-records-per-document";
+        argv[dummyArgvForTesting.length + 1] = "10";
+        IngestArguments ingestArguments = IngestArguments.parseArgs(argv);
+
+        Map<Long, IngestVerifier.SampleTally> tallies = IngestVerifier.tallyAvroPaths(objectMapper, avroFiles, ingestArguments);
+
+        // Same split as `AvroReaderTest.testDocumentsForAvroPathSpanningSamples`: sample 2 has 88 records in 9
+        // documents, sample 3 has 12 records in 2 documents.
+        Assert.assertEquals(tallies.keySet(), Set.of(2L, 3L));
+        Assert.assertEquals(tallies.get(2L).documentCount(), 9L);
+        Assert.assertEquals(tallies.get(2L).recordCount(), 88L);
+        Assert.assertEquals(tallies.get(3L).documentCount(), 2L);
+        Assert.assertEquals(tallies.get(3L).recordCount(), 12L);
+
+        // Tallies are deterministic and so comparable across runs.
+        Assert.assertEquals(IngestVerifier.tallyAvroPaths(objectMapper, avroFiles, ingestArguments), tallies);
+    }
+
+    public void testCompareTallies() {
+        Map<Long, IngestVerifier.SampleTally> expected = Map.of(
+                1L, new IngestVerifier.SampleTally(2, 100, 12345L),
+                2L, new IngestVerifier.SampleTally(1, 10, 678L));
+
+        Assert.assertTrue(IngestVerifier.compareTallies(expected, expected).isEmpty());
+
+        // Extra samples in the container are not mismatches.
+        Map<Long, IngestVerifier.SampleTally> actual = new HashMap<>(expected);
+        actual.put(3L, new IngestVerifier.SampleTally(1, 1, 1L));
+        Assert.assertTrue(IngestVerifier.compareTallies(expected, actual).isEmpty());
+
+        // A lost document.
+        actual.put(1L, new IngestVerifier.SampleTally(1, 60, 12000L));
+        Assert.assertEquals(IngestVerifier.compareTallies(expected, actual).size(), 1);
+
+        // A missing sample.
+        actual.remove(2L);
+        Assert.assertEquals(IngestVerifier.compareTallies(expected, actual).size(), 2);
+    }
+
+    public void testTalliesCombineInAnyOrder() {
+        IngestVerifier.SampleTally a = new IngestVerifier.SampleTally(1, 10, Long.MAX_VALUE);
+        IngestVerifier.SampleTally b = new IngestVerifier.SampleTally(1, 20, 42L);
+        Assert.assertEquals(a.plus(b), b.plus(a));
+        Assert.assertEquals(a.plus(b).checksum(), Long.MAX_VALUE + 42L);
+    }
+}
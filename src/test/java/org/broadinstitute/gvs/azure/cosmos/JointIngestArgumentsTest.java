@@ -0,0 +1,63 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.beust.jcommander.ParameterException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+@Test
+public class JointIngestArgumentsTest {
+
+    public void validInvocation() {
+        JointIngestArguments args = JointIngestArguments.parseArgs(new String[]{
+                "--database", "mydatabase", "--total-throughput", "10000",
+                "--load", "container=vets,avro-dir=/data/vets,max-records-per-document=6000,continuous-flux",
+                "--load", "container=ref_ranges,avro-dir=/data/ref_ranges,max-records-per-document=40000,drop-state=4"});
+        Assert.assertEquals(args.getDatabase(), "mydatabase");
+        Assert.assertEquals(args.getTotalThroughput(), 10000);
+        Assert.assertEquals(args.getRebalanceIntervalSeconds(), 10);
+
+        List<IngestArguments> loads = args.getLoads();
+        Assert.assertEquals(loads.size(), 2);
+
+        IngestArguments vets = loads.get(0);
+        Assert.assertEquals(vets.getDatabase(), "mydatabase");
+        Assert.assertEquals(vets.getContainer(), "vets");
+        Assert.assertEquals(vets.getAvroDir(), "/data/vets");
+        Assert.assertEquals(vets.getMaxRecordsPerDocument(), 6000L);
+        Assert.assertNull(vets.getDropState());
+        Assert.assertTrue(vets.isContinuousFlux());
+
+        IngestArguments refRanges = loads.get(1);
+        Assert.assertEquals(refRanges.getContainer(), "ref_ranges");
+        Assert.assertEquals(refRanges.getAvroDir(), "/data/ref_ranges");
+        Assert.assertEquals(refRanges.getMaxRecordsPerDocument(), 40000L);
+        Assert.assertEquals(refRanges.getDropState(), "4");
+        Assert.assertFalse(refRanges.isContinuousFlux());
+    }
+
+    @Test(expectedExceptions = {ParameterException.class},
+            expectedExceptionsMessageRegExp = "The following option is required: \\[--avro-dir]")
+    public void loadSpecMissingAvroDir() {
+        JointIngestArguments.parseArgs(new String[]{
+                "--database", "mydatabase", "--total-throughput", "10000", "--load", "container=vets"});
+    }
+
+    @Test(expectedExceptions = {ParameterException.class},
+            expectedExceptionsMessageRegExp = "Container 'vets' is loaded more than once")
+    public void duplicateContainers() {
+        JointIngestArguments.parseArgs(new String[]{
+                "--database", "mydatabase", "--total-throughput", "10000",
+                "--load", "container=vets,avro-dir=/data/vets_1,summary-container=summaries",
+                "--load", "container=vets,avro-dir=/data/vets_2,summary-container=summaries"});
+    }
+
+    @Test(expectedExceptions = {ParameterException.class},
+            expectedExceptionsMessageRegExp = "Option 'target-throughput' cannot be specified.*")
+    public void loadSpecWithTargetThroughput() {
+        JointIngestArguments.parseArgs(new String[]{
+                "--database", "mydatabase", "--total-throughput", "10000",
+                "--load", "container=vets,avro-dir=/data/vets,target-throughput=5000"});
+    }
+}
@@ -0,0 +1,66 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Test
+public class PartitionKeyStrategyTest {
+
+    private static ObjectNode document(long sampleId, int chromosome, long start) {
+        String documentText = String.format("""
+                {
+                     "id": "1",
+                     "sample_id" : %d,
+                     "chromosome": %d,
+                     "location" : {
+                         "start" : %d
+                     }
+                }
+                """, sampleId, chromosome, start);
+        try {
+            return (ObjectNode) new ObjectMapper().readTree(documentText);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void testSampleId() {
+        ObjectNode document = document(7, 24, 24000056884305L);
+        Assert.assertEquals(PartitionKeyStrategy.SAMPLE_ID.partitionKeyComponents(document, 16), List.of(7L));
+        Assert.assertFalse(document.has(PartitionKeyStrategy.SYNTHETIC_PARTITION_KEY));
+    }
+
+    public void testSampleIdChromosome() {
+        ObjectNode document = document(7, 24, 24000056884305L);
+        Assert.assertEquals(PartitionKeyStrategy.SAMPLE_ID_CHROMOSOME.partitionKeyComponents(document, 16), List.of("7-24"));
+        Assert.assertEquals(document.get(PartitionKeyStrategy.SYNTHETIC_PARTITION_KEY).asText(), "7-24");
+    }
+
+    public void testHierarchical() {
+        ObjectNode document = document(7, 24, 24000056884305L);
+        Assert.assertEquals(PartitionKeyStrategy.HIERARCHICAL.partitionKeyComponents(document, 16), List.of(7L, 24L));
+        Assert.assertFalse(document.has(PartitionKeyStrategy.SYNTHETIC_PARTITION_KEY));
+    }
+
+    public void testHashedBucket() {
+        Set<String> partitionKeys = new HashSet<>();
+        for (long start = 1000000000001L; start < 1000000001001L; start++) {
+            ObjectNode document = document(7, 1, start);
+            List<Object> components = PartitionKeyStrategy.HASHED_BUCKET.partitionKeyComponents(document, 4);
+            Assert.assertEquals(components.size(), 1);
+            String partitionKey = (String) components.get(0);
+            Assert.assertEquals(document.get(PartitionKeyStrategy.SYNTHETIC_PARTITION_KEY).asText(), partitionKey);
+            // Deterministic for a given document.
+            Assert.assertEquals(PartitionKeyStrategy.HASHED_BUCKET.partitionKeyComponents(document(7, 1, start), 4), components);
+            partitionKeys.add(partitionKey);
+        }
+        Assert.assertEquals(partitionKeys, Set.of("7-0", "7-1", "7-2", "7-3"));
+    }
+}
@@ -0,0 +1,59 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+@Test
+public class SampleFilterTest {
+
+    public void testIncludeAll() {
+        SampleFilter sampleFilter = SampleFilter.includeAll();
+        Assert.assertTrue(sampleFilter.includes(1L));
+        Assert.assertTrue(sampleFilter.includes(2L));
+        Assert.assertEquals(sampleFilter.getIncludedSampleIds(), Set.of(1L, 2L));
+    }
+
+    public void testExcluding() {
+        SampleFilter sampleFilter = SampleFilter.excluding(Set.of(2L, 3L));
+        Assert.assertTrue(sampleFilter.includes(1L));
+        Assert.assertFalse(sampleFilter.includes(2L));
+        Assert.assertFalse(sampleFilter.includes(3L));
+        Assert.assertTrue(sampleFilter.includes(4L));
+        Assert.assertEquals(sampleFilter.getIncludedSampleIds(), Set.of(1L, 4L));
+    }
+
+    public void testFailedSamplesAreNotLoaded() {
+        SampleFilter sampleFilter = SampleFilter.includeAll();
+        Assert.assertTrue(sampleFilter.includes(1L));
+        Assert.assertTrue(sampleFilter.includes(2L));
+        Assert.assertTrue(sampleFilter.includes(3L));
+        sampleFilter.recordFailure(2L);
+        sampleFilter.recordFailure(2L);
+
+        Assert.assertEquals(sampleFilter.getIncludedSampleIds(), Set.of(1L, 2L, 3L));
+        Assert.assertEquals(sampleFilter.getFailedSampleIds(), Set.of(2L));
+        Assert.assertEquals(sampleFilter.getLoadedSampleIds(), Set.of(1L, 3L));
+    }
+
+    public void testManifest() throws IOException {
+        Path manifestDir = Files.createTempDirectory("sample-manifest-test-");
+        Path manifestPath = manifestDir.resolve("loaded_samples.txt");
+
+        // A manifest that does not exist yet is empty.
+        Assert.assertEquals(SampleFilter.readManifest(manifestPath), Set.of());
+
+        SampleFilter.appendToManifest(manifestPath, List.of(3L, 1L));
+        SampleFilter.appendToManifest(manifestPath, List.of(2L));
+        Assert.assertEquals(SampleFilter.readManifest(manifestPath), Set.of(1L, 2L, 3L));
+        Assert.assertEquals(Files.readAllLines(manifestPath), List.of("1", "3", "2"));
+
+        Files.delete(manifestPath);
+        Files.delete(manifestDir);
+    }
+}
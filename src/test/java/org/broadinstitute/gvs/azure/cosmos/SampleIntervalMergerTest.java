@@ -0,0 +1,124 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test
+public class SampleIntervalMergerTest {
+
+    private static final long CHR1 = AvroReader.CHROMOSOME_MULTIPLIER;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ObjectNode variant(long location, String ref, String alt) {
+        return objectMapper.createObjectNode().put("location", location).put("ref", ref).put("alt", alt).put("call_GT", "0/1");
+    }
+
+    private ObjectNode reference(long location, int length) {
+        return objectMapper.createObjectNode().put("location", location).put("length", length).put("state", "3");
+    }
+
+    private ObjectNode document(ObjectNode... entries) {
+        ObjectNode document = objectMapper.createObjectNode();
+        document.put("sample_id", 7L);
+        document.putArray("entries").addAll(List.of(entries));
+        return document;
+    }
+
+    private static List<ObjectNode> merge(List<ObjectNode> vetDocuments, List<ObjectNode> refDocuments) {
+        List<ObjectNode> intervals = new ArrayList<>();
+        new SampleIntervalMerger(7L, vetDocuments.iterator(), refDocuments.iterator()).forEachRemaining(intervals::add);
+        return intervals;
+    }
+
+    private static void assertInterval(ObjectNode interval, String type, long start, long end) {
+        Assert.assertEquals(interval.get("type").asText(), type);
+        Assert.assertEquals(interval.get("location").asLong(), start);
+        Assert.assertEquals(interval.get("end").asLong(), end);
+        Assert.assertEquals(interval.get("sample_id").asLong(), 7L);
+        Assert.assertEquals(AvroReader.calculateEndLocation(interval), end);
+    }
+
+    public void testVariantSplitsReferenceBlock() {
+        List<ObjectNode> intervals = merge(
+                List.of(document(variant(CHR1 + 1003, "A", "T"))),
+                List.of(document(reference(CHR1 + 1000, 10))));
+
+        Assert.assertEquals(intervals.size(), 3);
+        assertInterval(intervals.get(0), SampleIntervalMerger.REFERENCE, CHR1 + 1000, CHR1 + 1002);
+        assertInterval(intervals.get(1), SampleIntervalMerger.VARIANT, CHR1 + 1003, CHR1 + 1003);
+        assertInterval(intervals.get(2), SampleIntervalMerger.REFERENCE, CHR1 + 1004, CHR1 + 1009);
+        Assert.assertEquals(intervals.get(2).get("state").asText(), "3");
+    }
+
+    public void testDeletionCoversReferenceBlocks() {
+        // A 10 base deletion at 1000 covers 1000-1009: the block at 1000 is trimmed away entirely, the block at
+        // 1005 as well, and the block at 1008 keeps 1010-1012.
+        List<ObjectNode> intervals = merge(
+                List.of(document(variant(CHR1 + 1000, "ACGTACGTAC", "A"), variant(CHR1 + 1020, "C", "G,CAA"))),
+                List.of(document(reference(CHR1 + 1000, 5), reference(CHR1 + 1005, 3)),
+                        document(reference(CHR1 + 1008, 5), reference(CHR1 + 1013, 20))));
+
+        Assert.assertEquals(intervals.size(), 5);
+        assertInterval(intervals.get(0), SampleIntervalMerger.VARIANT, CHR1 + 1000, CHR1 + 1009);
+        assertInterval(intervals.get(1), SampleIntervalMerger.REFERENCE, CHR1 + 1010, CHR1 + 1012);
+        assertInterval(intervals.get(2), SampleIntervalMerger.REFERENCE, CHR1 + 1013, CHR1 + 1019);
+        // Multi-allelic with a 3 base insertion allele.
+        assertInterval(intervals.get(3), SampleIntervalMerger.VARIANT, CHR1 + 1020, CHR1 + 1022);
+        assertInterval(intervals.get(4), SampleIntervalMerger.REFERENCE, CHR1 + 1023, CHR1 + 1032);
+    }
+
+    public void testGapsAndOneSidedStreams() {
+        // Dropped state reference blocks leave gaps that stay gaps.
+        List<ObjectNode> intervals = merge(
+                List.of(document(variant(CHR1 + 50, "G", "A")), document(variant(2 * CHR1 + 5, "T", "C"))),
+                List.of(document(reference(CHR1 + 1, 10))));
+
+        Assert.assertEquals(intervals.size(), 3);
+        assertInterval(intervals.get(0), SampleIntervalMerger.REFERENCE, CHR1 + 1, CHR1 + 10);
+        assertInterval(intervals.get(1), SampleIntervalMerger.VARIANT, CHR1 + 50, CHR1 + 50);
+        assertInterval(intervals.get(2), SampleIntervalMerger.VARIANT, 2 * CHR1 + 5, 2 * CHR1 + 5);
+
+        Assert.assertTrue(merge(List.of(), List.of()).isEmpty());
+        Assert.assertEquals(merge(List.of(), List.of(document(reference(CHR1 + 1, 10)))).size(), 1);
+        Assert.assertEquals(merge(List.of(document(variant(CHR1 + 1, "A", "C"))), List.of()).size(), 1);
+    }
+
+    public void testDocumentsUnpackedLazily() {
+        AtomicInteger refDocumentsRead = new AtomicInteger();
+        List<ObjectNode> refDocuments = List.of(
+                document(reference(CHR1 + 1, 10)),
+                document(reference(CHR1 + 11, 10)),
+                document(reference(CHR1 + 21, 10)));
+        Iterator<ObjectNode> countingRefDocuments = new Iterator<>() {
+            private final Iterator<ObjectNode> delegate = refDocuments.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            @Override
+            public ObjectNode next() {
+                refDocumentsRead.incrementAndGet();
+                return delegate.next();
+            }
+        };
+
+        SampleIntervalMerger merger = new SampleIntervalMerger(7L, List.<ObjectNode>of().iterator(), countingRefDocuments);
+        Assert.assertEquals(refDocumentsRead.get(), 1);
+        merger.next();
+        Assert.assertEquals(refDocumentsRead.get(), 2);
+        merger.next();
+        merger.next();
+        Assert.assertEquals(refDocumentsRead.get(), 3);
+        Assert.assertFalse(merger.hasNext());
+    }
+}
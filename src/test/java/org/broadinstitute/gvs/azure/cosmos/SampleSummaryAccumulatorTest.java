@@ -0,0 +1,128 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Test
+public class SampleSummaryAccumulatorTest {
+
+    private static final String[] dummyArgvForTesting = {
+            "--container", "dummy-container",
+            "--database", "dummy-database",
+            "--avro-dir", "dummy-avro-dir"
+    };
+
+    public void testVetSummaries() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        IngestArguments ingestArguments = IngestArguments.parseArgs(dummyArgvForTesting);
+        SampleSummaryAccumulator summaryAccumulator = new SampleSummaryAccumulator("dummy-container");
+
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+        AvroReader.documentsForAvroPath(objectMapper, avroFiles.get(0), ingestArguments, SampleFilter.includeAll(),
+                summaryAccumulator, new AtomicLong(), new AtomicLong());
+
+        List<ObjectNode> summaries = summaryAccumulator.toDocuments(objectMapper);
+        Assert.assertEquals(summaries.size(), 2);
+
+        ObjectNode summary = summaries.get(0);
+        Assert.assertEquals(summary.get("id").asText(), SampleSummaryAccumulator.summaryId("dummy-container", 2));
+        Assert.assertEquals(summary.get("id").asText(), "summary-dummy-container-2");
+        Assert.assertEquals(summary.get("sample_id").asLong(), 2L);
+        Assert.assertEquals(summary.get("container").asText(), "dummy-container");
+        Assert.assertEquals(summary.get("total_records").asLong(), 88L);
+        Assert.assertEquals(summary.get("chromosomes").size(), 1);
+        JsonNode chromosome = summary.get("chromosomes").get(0);
+        Assert.assertEquals(chromosome.get("chromosome").asInt(), 24);
+        Assert.assertEquals(chromosome.get("records").asLong(), 88L);
+        Assert.assertEquals(chromosome.get("variants").asLong(), 88L);
+        Assert.assertFalse(chromosome.has("ref_blocks"));
+        Assert.assertTrue(chromosome.get("first_location").asLong() <= chromosome.get("last_location").asLong());
+
+        long genotypeTotal = 0;
+        for (JsonNode count : chromosome.get("variants_by_call_GT")) {
+            genotypeTotal += count.asLong();
+        }
+        Assert.assertEquals(genotypeTotal, 88L);
+
+        summary = summaries.get(1);
+        Assert.assertEquals(summary.get("sample_id").asLong(), 3L);
+        Assert.assertEquals(summary.get("total_records").asLong(), 12L);
+        Assert.assertEquals(summary.get("chromosomes").get(0).get("chromosome").asInt(), 1);
+
+        // Summaries live in their own container, nothing pretends they are data documents.
+        Assert.assertFalse(summary.has("chromosome"));
+        Assert.assertFalse(summary.has("location"));
+        Assert.assertFalse(summary.has("record_count"));
+        Assert.assertFalse(summary.has("checksum"));
+    }
+
+    public void testRefRangesSummariesIncludeDropState() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String[] argv = Arrays.copyOf(dummyArgvForTesting, dummyArgvForTesting.length + 2);
+        argv[dummyArgvForTesting.length] = "--drop-state";
+        argv[dummyArgvForTesting.length + 1] = "4";
+        IngestArguments ingestArguments = IngestArguments.parseArgs(argv);
+        SampleSummaryAccumulator summaryAccumulator = new SampleSummaryAccumulator("dummy-container");
+
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/ref_ranges/spanning_samples");
+        List<ObjectNode> documents = AvroReader.documentsForAvroPath(objectMapper, avroFiles.get(0), ingestArguments,
+                SampleFilter.includeAll(), summaryAccumulator, new AtomicLong(), new AtomicLong());
+        Assert.assertEquals(documents.size(), 2);
+
+        List<ObjectNode> summaries = summaryAccumulator.toDocuments(objectMapper);
+        Assert.assertEquals(summaries.size(), 2);
+
+        long totalRecords = 0;
+        long droppedRecords = 0;
+        for (ObjectNode document : documents) {
+            ObjectNode summary = summaries.stream()
+                    .filter(s -> s.get("sample_id").asLong() == document.get("sample_id").asLong())
+                    .findFirst().orElseThrow();
+            JsonNode chromosome = summary.get("chromosomes").get(0);
+            Assert.assertEquals(chromosome.get("chromosome").asInt(), document.get("chromosome").asInt());
+            Assert.assertFalse(chromosome.has("variants"));
+
+            // Everything written to the document plus everything dropped.
+            long dropped = chromosome.get("ref_blocks_by_state").path("4").asLong();
+            Assert.assertEquals(chromosome.get("ref_blocks").asLong(), document.get("entries").size() + dropped);
+
+            long bases = 0;
+            for (JsonNode entry : document.get("entries")) {
+                bases += entry.get("length").asLong();
+            }
+            long summaryBases = 0;
+            for (JsonNode stateBases : chromosome.get("ref_bases_by_state")) {
+                summaryBases += stateBases.asLong();
+            }
+            Assert.assertEquals(summaryBases - chromosome.get("ref_bases_by_state").path("4").asLong(), bases);
+
+            totalRecords += summary.get("total_records").asLong();
+            droppedRecords += dropped;
+        }
+        Assert.assertEquals(totalRecords, 100L);
+        Assert.assertEquals(droppedRecords, 40L);
+    }
+
+    public void testExcludedSamplesAreNotSummarized() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        IngestArguments ingestArguments = IngestArguments.parseArgs(dummyArgvForTesting);
+        SampleSummaryAccumulator summaryAccumulator = new SampleSummaryAccumulator("dummy-container");
+
+        List<Path> avroFiles = AvroReader.findAvroPaths("src/test/resources/vets/spanning_samples");
+        AvroReader.documentsForAvroPath(objectMapper, avroFiles.get(0), ingestArguments, SampleFilter.excluding(Set.of(2L)),
+                summaryAccumulator, new AtomicLong(), new AtomicLong());
+
+        List<ObjectNode> summaries = summaryAccumulator.toDocuments(objectMapper);
+        Assert.assertEquals(summaries.size(), 1);
+        Assert.assertEquals(summaries.get(0).get("sample_id").asLong(), 3L);
+    }
+}
@@ -0,0 +1,230 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import com.beust.jcommander.ParameterException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Test
+public class SyntheticAvroGeneratorTest {
+
+    private static Path generate(String... extraArgs) throws IOException {
+        Path outputDir = Files.createTempDirectory("synthetic-avro-test-");
+        List<String> argv = new ArrayList<>(List.of(
+                "--output-dir", outputDir.toString(), "--samples", "3", "--vets-per-sample", "50",
+                "--ref-ranges-per-sample", "120", "--chromosomes", "4"));
+        argv.addAll(List.of(extraArgs));
+        SyntheticAvroGenerator.generate(GeneratorArguments.parseArgs(argv.toArray(new String[0])));
+        return outputDir;
+    }
+
+    private static List<Path> sortedAvroPaths(Path dir) {
+        List<Path> avroPaths = new ArrayList<>(AvroReader.findAvroPaths(dir.toString()));
+        Collections.sort(avroPaths);
+        return avroPaths;
+    }
+
+    // All records of all files in a directory, in file name order, as strings.
+    private static List<String> readRecords(Path dir) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (Path avroPath : sortedAvroPaths(dir)) {
+            try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(avroPath.toString()), new GenericDatumReader<>())) {
+                for (GenericRecord record : reader) {
+                    records.add(record.toString());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public void testGeneratedFiles() throws IOException {
+        Path outputDir = generate("--files", "2", "--multi-allelic-rate", "0.5", "--seed", "42");
+
+        List<Path> vetPaths = sortedAvroPaths(outputDir.resolve("vets"));
+        Assert.assertEquals(vetPaths.size(), 2);
+        List<Path> refRangesPaths = sortedAvroPaths(outputDir.resolve("ref_ranges"));
+        Assert.assertEquals(refRangesPaths.size(), 2);
+
+        List<GenericRecord> vets = new ArrayList<>();
+        for (Path vetPath : vetPaths) {
+            try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(vetPath.toString()), new GenericDatumReader<>())) {
+                Assert.assertEquals(reader.getSchema(), SyntheticAvroGenerator.VET_SCHEMA);
+                Assert.assertEquals(reader.getMetaString("avro.codec"), "snappy");
+                reader.forEach(vets::add);
+            }
+        }
+        Assert.assertEquals(vets.size(), 150);
+        Set<Long> sampleIds = new HashSet<>();
+        long multiAllelic = 0;
+        for (int i = 0; i < vets.size(); i++) {
+            GenericRecord vet = vets.get(i);
+            sampleIds.add((Long) vet.get("sample_id"));
+            if (vet.get("alt").toString().contains(",")) {
+                multiAllelic++;
+            }
+            if (i > 0) {
+                // Ordered by sample_id and location like the README exports.
+                Assert.assertTrue(AvroExternalSorter.SAMPLE_LOCATION_ORDER.compare(vets.get(i - 1), vet) < 0);
+            }
+        }
+        Assert.assertEquals(sampleIds, Set.of(1L, 2L, 3L));
+        Assert.assertTrue(multiAllelic > 0 && multiAllelic < 150);
+
+        // The generated data goes through the document builder, one document per sample and chromosome.
+        IngestArguments ingestArguments = IngestArguments.parseArgs(new String[]{
+                "--container", "dummy-container", "--database", "dummy-database", "--avro-dir", "dummy-avro-dir"});
+        List<ObjectNode> documents = new ArrayList<>();
+        for (Path refRangesPath : refRangesPaths) {
+            documents.addAll(AvroReader.documentsForAvroPath(
+                    new ObjectMapper(), refRangesPath, ingestArguments, new AtomicLong(), new AtomicLong()));
+        }
+        long recordCount = documents.stream().mapToLong(document -> document.get("record_count").asLong()).sum();
+        Assert.assertEquals(recordCount, 360L);
+        // 3 samples x 4 chromosomes. 180 records per file puts the file split between sample 2's second and third
+        // chromosomes, so no sample / chromosome is split across files.
+        Assert.assertEquals(documents.size(), 12);
+
+        deleteRecursively(outputDir);
+    }
+
+    public void testDeterministicFromSeed() throws IOException {
+        Path first = generate("--files", "3", "--seed", "7");
+        Path second = generate("--files", "1", "--seed", "7");
+        Path otherSeed = generate("--files", "1", "--seed", "8");
+
+        // Same records regardless of how they are split into files.
+        Assert.assertEquals(readRecords(first.resolve("vets")), readRecords(second.resolve("vets")));
+        Assert.assertEquals(readRecords(first.resolve("ref_ranges")), readRecords(second.resolve("ref_ranges")));
+        Assert.assertNotEquals(readRecords(otherSeed.resolve("vets")), readRecords(second.resolve("vets")));
+
+        deleteRecursively(first);
+        deleteRecursively(second);
+        deleteRecursively(otherSeed);
+    }
+
+    public void testStateDistribution() throws IOException {
+        Path outputDir = generate("--state-distribution", "4=1,v=0");
+        for (String record : readRecords(outputDir.resolve("ref_ranges"))) {
+            Assert.assertTrue(record.contains("\"state\": \"4\""), record);
+        }
+        deleteRecursively(outputDir);
+    }
+
+    // All records of all files in a directory, in file name order.
+    private static List<GenericRecord> readGenericRecords(Path dir) throws IOException {
+        List<GenericRecord> records = new ArrayList<>();
+        for (Path avroPath : sortedAvroPaths(dir)) {
+            try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(avroPath.toString()), new GenericDatumReader<>())) {
+                reader.forEach(records::add);
+            }
+        }
+        return records;
+    }
+
+    public void testReferenceBlocksLeaveVariantsUncovered() throws IOException {
+        // Dense enough that variants and reference blocks meet often.
+        Path outputDir = generate("--vets-per-sample", "2000", "--ref-ranges-per-sample", "4000", "--chromosomes", "1",
+                "--multi-allelic-rate", "0.3");
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // sample_id -> variant start -> variant end.
+        Map<Long, TreeMap<Long, Long>> variantExtents = new HashMap<>();
+        for (GenericRecord vet : readGenericRecords(outputDir.resolve("vets"))) {
+            long end = AvroReader.calculateEndLocation((ObjectNode) objectMapper.readTree(vet.toString()));
+            variantExtents.computeIfAbsent((Long) vet.get("sample_id"), id -> new TreeMap<>()).put((Long) vet.get("location"), end);
+        }
+
+        long refRanges = 0;
+        for (GenericRecord refRange : readGenericRecords(outputDir.resolve("ref_ranges"))) {
+            long start = (Long) refRange.get("location");
+            long end = start + (Long) refRange.get("length") - 1;
+            TreeMap<Long, Long> extents = variantExtents.get((Long) refRange.get("sample_id"));
+            // Generated variants cover at most 9 bases, so only those starting a little before the block can reach it.
+            for (Map.Entry<Long, Long> variant : extents.subMap(start - 16, true, end, true).entrySet()) {
+                Assert.assertTrue(variant.getValue() < start,
+                        String.format("Reference block %d-%d overlaps variant %d-%d", start, end, variant.getKey(), variant.getValue()));
+            }
+            refRanges++;
+        }
+        Assert.assertEquals(refRanges, 3 * 4000L);
+
+        deleteRecursively(outputDir);
+    }
+
+    public void testReferenceBlocksTileVariants() throws IOException {
+        // The default ratio of 4 reference blocks per variant.
+        Path outputDir = generate("--vets-per-sample", "200", "--ref-ranges-per-sample", "800", "--chromosomes", "2");
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // sample_id -> block start -> block end.
+        Map<Long, TreeMap<Long, Long>> blockExtents = new HashMap<>();
+        for (GenericRecord refRange : readGenericRecords(outputDir.resolve("ref_ranges"))) {
+            long start = (Long) refRange.get("location");
+            blockExtents.computeIfAbsent((Long) refRange.get("sample_id"), id -> new TreeMap<>())
+                    .put(start, start + (Long) refRange.get("length") - 1);
+        }
+
+        // Inside the tiling, the bases either side of a variant are reference bases unless another variant is there.
+        long variants = 0;
+        long flankedVariants = 0;
+        for (GenericRecord vet : readGenericRecords(outputDir.resolve("vets"))) {
+            long start = (Long) vet.get("location");
+            long end = AvroReader.calculateEndLocation((ObjectNode) objectMapper.readTree(vet.toString()));
+            TreeMap<Long, Long> extents = blockExtents.get((Long) vet.get("sample_id"));
+            Map.Entry<Long, Long> before = extents.floorEntry(start - 1);
+            Map.Entry<Long, Long> after = extents.floorEntry(end + 1);
+            if (before != null && before.getValue() >= start - 1 && after != null && after.getValue() >= end + 1) {
+                flankedVariants++;
+            }
+            variants++;
+        }
+        Assert.assertEquals(variants, 3 * 200L);
+        Assert.assertTrue(flankedVariants >= variants * 95 / 100,
+                String.format("Only %d of %d variants are inside the reference tiling", flankedVariants, variants));
+
+        deleteRecursively(outputDir);
+    }
+
+    public void testArgumentValidation() {
+        String[] base = {"--output-dir", "unused"};
+        Assert.assertThrows(ParameterException.class, () -> GeneratorArguments.parseArgs(
+                Stream.concat(Arrays.stream(base), Stream.of("--multi-allelic-rate", "1.5")).toArray(String[]::new)));
+        Assert.assertThrows(ParameterException.class, () -> GeneratorArguments.parseArgs(
+                Stream.concat(Arrays.stream(base), Stream.of("--vets-per-sample", "-1")).toArray(String[]::new)));
+        Assert.assertThrows(ParameterException.class, () -> GeneratorArguments.parseArgs(
+                Stream.concat(Arrays.stream(base), Stream.of("--ref-ranges-per-sample", "-1")).toArray(String[]::new)));
+        Assert.assertThrows(ParameterException.class, () -> GeneratorArguments.parseArgs(
+                Stream.concat(Arrays.stream(base), Stream.of("--state-distribution", "0=1,4=-0.5")).toArray(String[]::new)));
+        GeneratorArguments.parseArgs(Stream.concat(Arrays.stream(base), Stream.of("--multi-allelic-rate", "1")).toArray(String[]::new));
+    }
+
+    public void testRecordsForChromosome() {
+        int total = 0;
+        for (int chromosome = 1; chromosome <= 24; chromosome++) {
+            int records = SyntheticAvroGenerator.recordsForChromosome(100, 24, chromosome);
+            Assert.assertTrue(records == 4 || records == 5);
+            total += records;
+        }
+        Assert.assertEquals(total, 100);
+    }
+}
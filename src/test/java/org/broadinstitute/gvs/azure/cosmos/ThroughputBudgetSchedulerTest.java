@@ -0,0 +1,72 @@
+package org.broadinstitute.gvs.azure.cosmos;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+@Test
+public class ThroughputBudgetSchedulerTest {
+
+    public void testAllSaturatedSplitEvenly() {
+        Map<String, Double> allocations = ThroughputBudgetScheduler.allocate(
+                10000, Map.of("vets", 5000.0, "ref_ranges", 5000.0), Map.of("vets", 4900.0, "ref_ranges", 5000.0));
+        Assert.assertEquals(allocations.get("vets"), 5000.0, 0.001);
+        Assert.assertEquals(allocations.get("ref_ranges"), 5000.0, 0.001);
+    }
+
+    public void testUnderusedShareMovesToSaturated() {
+        // ref_ranges is only using 2000 of its 5000, vets gets the rest less ref_ranges' headroom.
+        Map<String, Double> allocations = ThroughputBudgetScheduler.allocate(
+                10000, Map.of("vets", 5000.0, "ref_ranges", 5000.0), Map.of("vets", 5000.0, "ref_ranges", 2000.0));
+        Assert.assertEquals(allocations.get("ref_ranges"), 2500.0, 0.001);
+        Assert.assertEquals(allocations.get("vets"), 7500.0, 0.001);
+    }
+
+    public void testIdleContainerKeepsMinimum() {
+        Map<String, Double> allocations = ThroughputBudgetScheduler.allocate(
+                10000, Map.of("vets", 5000.0, "ref_ranges", 5000.0), Map.of("vets", 5000.0));
+        Assert.assertEquals(allocations.get("ref_ranges"), 10000.0 / ThroughputBudgetScheduler.TIERS, 0.001);
+        Assert.assertEquals(allocations.get("vets"), 10000.0 - 10000.0 / ThroughputBudgetScheduler.TIERS, 0.001);
+    }
+
+    public void testNoneSaturatedSpreadRemainder() {
+        Map<String, Double> allocations = ThroughputBudgetScheduler.allocate(
+                10000, Map.of("vets", 5000.0, "ref_ranges", 5000.0), Map.of("vets", 2000.0, "ref_ranges", 2000.0));
+        Assert.assertEquals(allocations.get("vets"), 5000.0, 0.001);
+        Assert.assertEquals(allocations.get("ref_ranges"), 5000.0, 0.001);
+    }
+
+    public void testMinimumsNeverOversubscribe() {
+        // vets is just under-using and keeps most of the budget, the two saturated containers are clamped to the
+        // minimum; everything is scaled back to fit.
+        Map<String, Double> allocations = ThroughputBudgetScheduler.allocate(
+                10000, Map.of("vets", 10000.0, "ref_ranges", 1000.0, "other", 1000.0),
+                Map.of("vets", 7900.0, "ref_ranges", 1000.0, "other", 1000.0));
+        double allocated = allocations.values().stream().mapToDouble(Double::doubleValue).sum();
+        Assert.assertEquals(allocated, 10000.0, 0.001);
+        Assert.assertTrue(allocations.get("vets") > allocations.get("ref_ranges"));
+    }
+
+    private static int sumOfTiers(Map<String, Integer> tiers) {
+        return tiers.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public void testTiersFor() {
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 0.0), 10000), Map.of("vets", 1));
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 2500.0), 10000), Map.of("vets", 2));
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 5000.0), 10000), Map.of("vets", 5));
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 10000.0), 10000), Map.of("vets", ThroughputBudgetScheduler.TIERS));
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 12000.0), 10000), Map.of("vets", ThroughputBudgetScheduler.TIERS));
+        Assert.assertEquals(ThroughputBudgetScheduler.tiersFor(Map.of("vets", 2999.9999999), 10000), Map.of("vets", 3));
+
+        // Rounding would give 6 + 5 = 11 tiers, more than the budget.
+        Map<String, Integer> tiers = ThroughputBudgetScheduler.tiersFor(Map.of("vets", 5500.0, "ref_ranges", 4500.0), 10000);
+        Assert.assertEquals(tiers, Map.of("vets", 5, "ref_ranges", 4));
+
+        // The lowest tier for an idle container comes out of the busiest one.
+        tiers = ThroughputBudgetScheduler.tiersFor(Map.of("vets", 10000.0, "ref_ranges", 0.0), 10000);
+        Assert.assertEquals(tiers, Map.of("vets", ThroughputBudgetScheduler.TIERS - 1, "ref_ranges", 1));
+        Assert.assertTrue(sumOfTiers(tiers) <= ThroughputBudgetScheduler.TIERS);
+    }
+}